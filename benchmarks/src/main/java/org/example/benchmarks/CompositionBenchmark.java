@@ -0,0 +1,134 @@
+package org.example.benchmarks;
+
+import org.example.m4.model.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * the composition patterns of AsyncExampleMultiTasks, with the sleep() calls replaced by
+ * {@link Blackhole#consumeCPU(long)} so that the cost of the plumbing itself becomes visible
+ * run with "-prof gc" to get the allocation rate per pattern
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompositionBenchmark {
+
+    record NewObject(String s1, String s2) {}
+
+    /**
+     * the amount of work (in consumeCPU tokens) that replaces each sleep()
+     */
+    @Param({"0", "1000", "10000"})
+    public long work;
+
+    private Supplier<List<Long>> supplyIDs;
+    private Function<List<Long>, CompletableFuture<List<User>>> fetchUser1;
+    private Function<List<Long>, CompletableFuture<List<User>>> fetchUser2;
+
+    @Setup
+    public void setup() {
+        supplyIDs = () -> {
+            Blackhole.consumeCPU(work);
+            return Arrays.asList(1L, 2L, 3L);
+        };
+        fetchUser1 = ids -> {
+            Blackhole.consumeCPU(work);
+            return CompletableFuture.supplyAsync(() -> ids.stream().map(User::new).toList());
+        };
+        fetchUser2 = ids -> {
+            Blackhole.consumeCPU(work * 2);
+            return CompletableFuture.supplyAsync(() -> ids.stream().map(User::new).toList());
+        };
+    }
+
+    /**
+     * example2, the non-async way: both fetches run one after another on the supplier's thread
+     */
+    @Benchmark
+    public void thenCompose(Blackhole bh) {
+        var cf = CompletableFuture.supplyAsync(supplyIDs);
+        var users1 = cf.thenCompose(fetchUser1);
+        var users2 = cf.thenCompose(fetchUser2);
+        users1.acceptEither(users2, bh::consume).join();
+    }
+
+    /**
+     * example2, the async way: both fetches are submitted to the common pool
+     */
+    @Benchmark
+    public void thenComposeAsync(Blackhole bh) {
+        var cf = CompletableFuture.supplyAsync(supplyIDs);
+        var users1 = cf.thenComposeAsync(fetchUser1);
+        var users2 = cf.thenComposeAsync(fetchUser2);
+        users1.acceptEither(users2, bh::consume).join();
+    }
+
+    /**
+     * example5, Method 2: thenCombine()
+     */
+    @Benchmark
+    public NewObject thenCombine() {
+        var cf1 = CompletableFuture.supplyAsync(() -> s("s1"));
+        var cf2 = CompletableFuture.supplyAsync(() -> s("s2"));
+        return cf1.thenCombine(cf2, NewObject::new).join();
+    }
+
+    /**
+     * example5, Method 3: thenCompose() nesting a thenApply()
+     */
+    @Benchmark
+    public NewObject nestedThenCompose() {
+        var cf1 = CompletableFuture.supplyAsync(() -> s("s1"));
+        var cf2 = CompletableFuture.supplyAsync(() -> s("s2"));
+        return cf1.thenCompose(r1 -> cf2.thenApply(r2 -> new NewObject(r1, r2))).join();
+    }
+
+    /**
+     * example4: allOf(), then re-stream the futures and join() each of them
+     */
+    @Benchmark
+    public int allOfJoin() {
+        var cf1 = CompletableFuture.supplyAsync(() -> i(200));
+        var cf2 = CompletableFuture.supplyAsync(() -> i(150));
+        var cf3 = CompletableFuture.supplyAsync(() -> i(100));
+        return CompletableFuture.allOf(cf1, cf2, cf3)
+                .thenApply(nil -> Stream.of(cf1, cf2, cf3)
+                        .map(CompletableFuture::join)
+                        .min(Comparator.comparing(Function.identity()))
+                        .orElseThrow())
+                .join();
+    }
+
+    private String s(String value) {
+        Blackhole.consumeCPU(work);
+        return value;
+    }
+
+    private Integer i(int value) {
+        Blackhole.consumeCPU(work);
+        return value;
+    }
+}
@@ -0,0 +1,139 @@
+package org.example.benchmarks;
+
+import org.example.m4.failure.Failures;
+import org.example.m4.failure.StacklessException;
+import org.example.m4.model.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * the recovery patterns of AsyncException: exceptionally() vs handle() vs whenComplete()
+ * the supplier fails errorRate% of the time, with a full stack trace or a cheap failure, see {@link #failure}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExceptionHandlingBenchmark {
+
+    /**
+     * the amount of work (in consumeCPU tokens) that replaces each sleep()
+     */
+    @Param({"0", "1000"})
+    public long work;
+
+    /**
+     * the percentage of the calls where the supplier fails, 100 is the "No data" of AsyncException
+     */
+    @Param({"0", "50", "100"})
+    public int errorRate;
+
+    /**
+     * how the supplier fails:
+     * fullStack throws IllegalStateException("No data") like in AsyncException, wrapped by supplyAsync
+     * stackless throws a new StacklessException wrapped by Failures.wrap()
+     * preallocated wraps the same Failures.preallocated() instance every time
+     */
+    @Param({"fullStack", "stackless", "preallocated"})
+    public String failure;
+
+    private static final StacklessException NO_DATA = Failures.preallocated("No data");
+
+    private Supplier<List<Long>> supplyIDs;
+    private Function<List<Long>, List<User>> fetchUsers;
+
+    @Setup
+    public void setup() {
+        supplyIDs = () -> {
+            Blackhole.consumeCPU(work);
+            if (ThreadLocalRandom.current().nextInt(100) < errorRate) {
+                throw switch (failure) {
+                    case "fullStack" -> new IllegalStateException("No data");
+                    case "stackless" -> Failures.wrap(new StacklessException("No data"));
+                    case "preallocated" -> Failures.wrap(NO_DATA);
+                    default -> throw new IllegalArgumentException("Unknown failure: " + failure);
+                };
+            }
+            return Arrays.asList(1L, 2L, 3L);
+        };
+        fetchUsers = ids -> {
+            Blackhole.consumeCPU(work);
+            return ids.stream().map(User::new).toList();
+        };
+    }
+
+    /**
+     * example1: recover with exceptionally(), the downstream never sees the exception
+     */
+    @Benchmark
+    public void exceptionally(Blackhole bh) {
+        CompletableFuture.supplyAsync(supplyIDs)
+                .exceptionally(e -> List.of())
+                .thenApply(fetchUsers)
+                .thenAccept(bh::consume)
+                .join();
+    }
+
+    /**
+     * exceptionally() without the thread handoff of supplyAsync(): the whole chain runs on the caller,
+     * so the cost of the failure is not hidden behind the cost of the handoff
+     */
+    @Benchmark
+    public void exceptionallyInline(Blackhole bh) {
+        CompletableFuture.completedFuture(null)
+                .thenApply(nil -> supplyIDs.get())
+                .exceptionally(e -> List.of())
+                .thenApply(fetchUsers)
+                .thenAccept(bh::consume)
+                .join();
+    }
+
+    /**
+     * example4: recover with handle()
+     */
+    @Benchmark
+    public void handle(Blackhole bh) {
+        CompletableFuture.supplyAsync(supplyIDs)
+                .handle((ids, exception) -> exception != null ? List.<Long>of() : ids)
+                .thenApply(fetchUsers)
+                .thenAccept(bh::consume)
+                .join();
+    }
+
+    /**
+     * example3: observe with whenComplete(), the exception is forwarded to every downstream stage
+     */
+    @Benchmark
+    public void whenComplete(Blackhole bh) {
+        var logs = CompletableFuture.supplyAsync(supplyIDs)
+                .whenComplete((ids, exception) -> bh.consume(exception))
+                .thenApply(fetchUsers)
+                .thenAccept(bh::consume);
+        try {
+            logs.join();
+        } catch (CompletionException e) {
+            bh.consume(e);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package org.example.benchmarks;
+
+import org.example.m5.executor.StickyExecutor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * the executor choices of SpecifyingThreadExample: ForkJoinPool.commonPool() vs dedicated executors
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExecutorChoiceBenchmark {
+
+    /**
+     * the amount of work (in consumeCPU tokens) that replaces each sleep()
+     */
+    @Param({"0", "1000"})
+    public long work;
+
+    /**
+     * the pool size is part of the name of the sized pools only,
+     * so that the common pool and the cached pool are not run once per size for nothing
+     */
+    @Param({"commonPool", "fixed-1", "fixed-4", "workStealing-1", "workStealing-4", "cached"})
+    public String executor;
+
+    private ExecutorService executorService1;
+    private ExecutorService executorService3;
+    private StickyExecutor sticky1;
+
+    @Setup
+    public void setup() {
+        executorService1 = create();
+        executorService3 = create();
+        sticky1 = new StickyExecutor(executorService1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        // the common pool cannot be shut down
+        if (executorService1 != ForkJoinPool.commonPool()) {
+            executorService1.shutdown();
+            executorService3.shutdown();
+        }
+    }
+
+    /**
+     * the example1 graph: s1 on executorService1, s2 on the common pool,
+     * s3 on the common pool hopping to executorService3, then wait for all of them
+     */
+    @Benchmark
+    public void specifyingThreads(Blackhole bh) {
+        var cf1 = CompletableFuture.supplyAsync(() -> s("s1"), executorService1);
+        var cf2 = CompletableFuture.supplyAsync(() -> s("s2")).thenApply(r2 -> r2);
+        var cf3 = CompletableFuture.supplyAsync(() -> s("s3")).thenApplyAsync(r3 -> r3, executorService3);
+        CompletableFuture.allOf(cf1, cf2, cf3).join();
+        bh.consume(cf1.join());
+        bh.consume(cf2.join());
+        bh.consume(cf3.join());
+    }
+
+    /**
+     * the cost of a single hop: supply on the executor, then thenApplyAsync on the same executor
+     */
+    @Benchmark
+    public String sameExecutorHop() {
+        return CompletableFuture.supplyAsync(() -> s("s1"), executorService1)
+                .thenApplyAsync(r -> r, executorService1)
+                .join();
+    }
+
+    /**
+     * sameExecutorHop through a StickyExecutor: the second stage runs inline on the thread of the first one
+     */
+    @Benchmark
+    public String stickyHop() {
+        return CompletableFuture.supplyAsync(() -> s("s1"), sticky1)
+                .thenApplyAsync(r -> r, sticky1)
+                .join();
+    }
+
+    private String s(String value) {
+        Blackhole.consumeCPU(work);
+        return value;
+    }
+
+    private ExecutorService create() {
+        int dash = executor.indexOf('-');
+        String kind = dash < 0 ? executor : executor.substring(0, dash);
+        int poolSize = dash < 0 ? 0 : Integer.parseInt(executor.substring(dash + 1));
+        return switch (kind) {
+            case "commonPool" -> ForkJoinPool.commonPool();
+            case "fixed" -> Executors.newFixedThreadPool(poolSize);
+            case "workStealing" -> Executors.newWorkStealingPool(poolSize);
+            case "cached" -> Executors.newCachedThreadPool();
+            default -> throw new IllegalArgumentException("Unknown executor: " + executor);
+        };
+    }
+}
@@ -0,0 +1,106 @@
+package org.example.benchmarks;
+
+import org.example.m4.model.Email;
+import org.example.m4.model.LongIdBatch;
+import org.example.m4.model.User;
+import org.example.m4.structured.CompletableFutureFanOut;
+import org.example.m4.structured.FanOut;
+import org.example.m4.structured.StructuredFanOut;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * the users + emails fan-out of AsyncExampleMultiTasks.example1, CompletableFuture vs StructuredTaskScope,
+ * with "concurrency" fan-outs in flight at the same time
+ * both run the branches on virtual threads, so the difference is the cost of the structure itself
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class FanOutBenchmark {
+
+    @Param({"completableFuture", "structured"})
+    public String implementation;
+
+    @Param({"100", "10000"})
+    public int concurrency;
+
+    /**
+     * the blocking latency of each branch, in milliseconds, 0 for none
+     */
+    @Param({"0", "1"})
+    public int latency;
+
+    private ExecutorService executorService;
+    private FanOut fanOut;
+    private Supplier<LongIdBatch> supplyIDs;
+    private Function<LongIdBatch, List<User>> fetchUser;
+    private Function<LongIdBatch, List<Email>> fetchEmails;
+
+    @Setup
+    public void setup() {
+        executorService = Executors.newVirtualThreadPerTaskExecutor();
+        fanOut = switch (implementation) {
+            case "completableFuture" -> new CompletableFutureFanOut(executorService);
+            case "structured" -> new StructuredFanOut();
+            default -> throw new IllegalArgumentException("Unknown implementation: " + implementation);
+        };
+        supplyIDs = () -> LongIdBatch.of(1L, 2L, 3L);
+        fetchUser = ids -> {
+            block();
+            return ids.mapToObj(User::new);
+        };
+        fetchEmails = ids -> {
+            block();
+            return ids.mapToObj(Email::new);
+        };
+    }
+
+    @TearDown
+    public void tearDown() {
+        executorService.shutdown();
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public void all(Blackhole bh) {
+        CompletableFuture<Integer>[] fanOuts = new CompletableFuture[concurrency];
+        for (int i = 0; i < concurrency; i++) {
+            fanOuts[i] = fanOut.all(supplyIDs, fetchUser, fetchEmails, (users, emails) -> users.size() + emails.size());
+        }
+        CompletableFuture.allOf(fanOuts).join();
+        bh.consume(fanOuts);
+    }
+
+    private void block() {
+        if (latency > 0) {
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
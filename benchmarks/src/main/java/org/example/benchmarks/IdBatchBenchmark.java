@@ -0,0 +1,93 @@
+package org.example.benchmarks;
+
+import org.example.m4.model.LongIdBatch;
+import org.example.m4.model.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+/**
+ * the supply -> fetch chain with boxed List<Long> ids vs LongIdBatch
+ * run with "-prof gc": the difference in gc.alloc.rate.norm is the boxing of the ids
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IdBatchBenchmark {
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    /**
+     * supplying the ids only
+     */
+    @Benchmark
+    public List<Long> boxedSupply() {
+        return LongStream.range(0, size).boxed().toList();
+    }
+
+    @Benchmark
+    public LongIdBatch batchSupply() {
+        return LongIdBatch.range(0, size);
+    }
+
+    /**
+     * the whole chain as it was: List<Long> mapped with ids.stream().map(User::new)
+     */
+    @Benchmark
+    public List<User> boxedChain() {
+        return CompletableFuture.supplyAsync(() -> LongStream.range(0, size).boxed().toList())
+                .thenApply(ids -> ids.stream().map(User::new).toList())
+                .join();
+    }
+
+    /**
+     * the whole chain with LongIdBatch mapped with the LongStream path
+     */
+    @Benchmark
+    public List<User> batchChainStream() {
+        return CompletableFuture.supplyAsync(() -> LongIdBatch.range(0, size))
+                .thenApply(ids -> ids.stream().mapToObj(User::new).toList())
+                .join();
+    }
+
+    /**
+     * the whole chain with LongIdBatch mapped with the presized loop
+     */
+    @Benchmark
+    public List<User> batchChainLoop() {
+        return CompletableFuture.supplyAsync(() -> LongIdBatch.range(0, size))
+                .thenApply(ids -> ids.mapToObj(User::new))
+                .join();
+    }
+
+    /**
+     * slicing the second half, e.g. to hand it to another fetch
+     */
+    @Benchmark
+    public int boxedSlice() {
+        List<Long> ids = LongStream.range(0, size).boxed().toList();
+        return ids.subList(size / 2, size).size();
+    }
+
+    @Benchmark
+    public int batchSlice() {
+        LongIdBatch ids = LongIdBatch.range(0, size);
+        return ids.slice(size / 2, size).size();
+    }
+}
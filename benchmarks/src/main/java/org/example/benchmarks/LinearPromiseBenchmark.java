@@ -0,0 +1,128 @@
+package org.example.benchmarks;
+
+import org.example.m4.failure.Failures;
+import org.example.m4.failure.StacklessException;
+import org.example.m4.model.LongIdBatch;
+import org.example.m4.model.User;
+import org.example.m4.promise.LinearPromise;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * the linear chain of AsyncException.example1, supply -> exceptionally -> apply -> accept,
+ * and the one of DummyCompletableFutureExample.example1, built on a pending dummy which is completed afterwards,
+ * on CompletableFutures vs LinearPromises
+ * run with -prof gc to compare the allocations per chain
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LinearPromiseBenchmark {
+
+    private static final StacklessException NO_DATA = Failures.preallocated("No data");
+
+    /**
+     * false: the supplier runs on the caller thread, true: it runs on the common pool, like supplyAsync()
+     * for the dummy chains: the dummy is completed on the common pool, like completeAsync()
+     */
+    @Param({"false", "true"})
+    public boolean async;
+
+    /**
+     * when true, the supplier throws "No data" and the chain recovers with an empty batch
+     */
+    @Param({"false", "true"})
+    public boolean fail;
+
+    private Supplier<LongIdBatch> supplyIDs;
+    private Function<LongIdBatch, List<User>> fetchUsers;
+
+    @Setup
+    public void setup() {
+        supplyIDs = () -> {
+            if (fail) {
+                throw Failures.wrap(NO_DATA);
+            }
+            return LongIdBatch.of(1L, 2L, 3L);
+        };
+        fetchUsers = ids -> ids.stream().mapToObj(User::new).toList();
+    }
+
+    @Benchmark
+    public void completableFuture(Blackhole bh) {
+        CompletableFuture<LongIdBatch> supply;
+        if (async) {
+            supply = CompletableFuture.supplyAsync(supplyIDs);
+        } else {
+            supply = CompletableFuture.completedFuture(null).thenApply(nil -> supplyIDs.get());
+        }
+        supply.exceptionally(e -> LongIdBatch.empty())
+                .thenApply(fetchUsers)
+                .thenAccept(bh::consume)
+                .join();
+    }
+
+    @Benchmark
+    public void linearPromise(Blackhole bh) {
+        LinearPromise<LongIdBatch> supply;
+        if (async) {
+            supply = LinearPromise.supplyAsync(supplyIDs);
+        } else {
+            supply = LinearPromise.completed(null).thenApply(nil -> supplyIDs.get());
+        }
+        supply.exceptionally(e -> LongIdBatch.empty())
+                .thenApply(fetchUsers)
+                .thenAccept(bh::consume)
+                .join();
+    }
+
+    @Benchmark
+    public void dummyCompletableFuture(Blackhole bh) {
+        CompletableFuture<Void> dummy = new CompletableFuture<>();
+        CompletableFuture<Void> logs = dummy.thenApply(nil -> supplyIDs.get())
+                .exceptionally(e -> LongIdBatch.empty())
+                .thenApply(fetchUsers)
+                .thenAccept(bh::consume);
+        if (async) {
+            dummy.completeAsync(() -> null);
+        } else {
+            dummy.complete(null);
+        }
+        logs.join();
+    }
+
+    @Benchmark
+    public void dummyLinearPromise(Blackhole bh) {
+        LinearPromise<Void> dummy = new LinearPromise<>();
+        LinearPromise<Void> logs = dummy.thenApply(nil -> supplyIDs.get())
+                .exceptionally(e -> LongIdBatch.empty())
+                .thenApply(fetchUsers)
+                .thenAccept(bh::consume);
+        if (async) {
+            ForkJoinPool.commonPool().execute(() -> dummy.complete(null));
+        } else {
+            dummy.complete(null);
+        }
+        logs.join();
+    }
+}
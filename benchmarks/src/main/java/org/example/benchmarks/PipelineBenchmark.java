@@ -0,0 +1,59 @@
+package org.example.benchmarks;
+
+import org.example.m4.model.LongIdBatch;
+import org.example.m4.model.User;
+import org.example.m4.pipeline.Pipeline;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * the chain of DummyCompletableFutureExample built behind a new dummy for every request,
+ * vs a Pipeline template triggered for every request
+ * run with -prof gc to compare the allocations per request
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PipelineBenchmark {
+
+    private final LongIdBatch ids = LongIdBatch.of(1L, 2L, 3L);
+    private Function<LongIdBatch, List<User>> fetchUsers;
+    private Pipeline<LongIdBatch, Integer> template;
+
+    @Setup
+    public void setup() {
+        fetchUsers = batch -> batch.stream().mapToObj(User::new).toList();
+        template = Pipeline.<LongIdBatch>start()
+                .thenApply(fetchUsers)
+                .thenApply(List::size);
+    }
+
+    @Benchmark
+    public int dummyChain() {
+        CompletableFuture<Void> dummy = new CompletableFuture<>();
+        CompletableFuture<Integer> count = dummy.thenApply(nil -> ids).thenApply(fetchUsers).thenApply(List::size);
+        dummy.complete(null);
+        return count.join();
+    }
+
+    @Benchmark
+    public int template() {
+        return template.trigger(ids).join();
+    }
+}
@@ -1,5 +1,8 @@
 package org.example.m3;
 
+import org.example.m4.resilience.Deadline;
+
+import java.time.Duration;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.Supplier;
 
@@ -71,9 +74,34 @@ public class CompletableFutureWithSupplier {
 
     }
 
+    /**
+     * to demonstrate using a deadline to provide the default value
+     * you can compare that with example2 and example3, where complete() / obtrudeValue() are called by hand
+     */
+    public static void example4() {
+        Supplier<String> supplier = () -> {
+            try {
+                Thread.sleep(2000);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return Thread.currentThread().getName();
+        };
+
+        Deadline deadline = Deadline.after(Duration.ofMillis(500));
+
+        // if the task is not done within the budget, it completes with the default value
+        var future = deadline.bound(CompletableFuture.supplyAsync(supplier), "default value");
+
+        String result = future.join();
+
+        System.out.println("Result: " + result + " - remaining budget: " + deadline.remaining().toMillis() + " ms");
+    }
+
     public static void main(String[] args) throws InterruptedException {
         //example1();
         //example2();
-        example3();
+        //example3();
+        example4();
     }
 }
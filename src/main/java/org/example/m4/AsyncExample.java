@@ -1,8 +1,10 @@
 package org.example.m4;
 
+import org.example.m4.model.LongIdBatch;
 import org.example.m4.model.User;
+import org.example.m4.trace.StageTracer;
 
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
@@ -10,7 +12,6 @@ import java.util.concurrent.Executors;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
-import java.util.stream.Collectors;
 
 public class AsyncExample {
 
@@ -19,15 +20,15 @@ public class AsyncExample {
      */
     public static void example1() {
         // pretending a list of user id
-        Supplier<List<Long>> supplyIDs = () -> {
+        Supplier<LongIdBatch> supplyIDs = () -> {
             sleep(200);
-            return Arrays.asList(1L, 2L, 3L);
+            return LongIdBatch.of(1L, 2L, 3L);
         };
 
         // pretending fetching users from DB
-        Function<List<Long>, List<User>> fetchUser = ids -> {
+        Function<LongIdBatch, List<User>> fetchUser = ids -> {
             sleep(300);
-            return ids.stream().map(User::new).collect(Collectors.toList());
+            return ids.stream().mapToObj(User::new).toList();
         };
 
         Consumer<List<User>> logger = users -> users.forEach(System.out::println);
@@ -50,17 +51,17 @@ public class AsyncExample {
 
         ExecutorService executorService = Executors.newSingleThreadExecutor();
         // pretending a list of user id
-        Supplier<List<Long>> supplyIDs = () -> {
+        Supplier<LongIdBatch> supplyIDs = () -> {
             sleep(200);
             System.out.println("Supplier - Running in thread: " + Thread.currentThread().getName());
-            return Arrays.asList(1L, 2L, 3L);
+            return LongIdBatch.of(1L, 2L, 3L);
         };
 
         // pretending fetching users from DB
-        Function<List<Long>, List<User>> fetchUser = ids -> {
+        Function<LongIdBatch, List<User>> fetchUser = ids -> {
             sleep(300);
             System.out.println("Function - Running in thread: " + Thread.currentThread().getName());
-            return ids.stream().map(User::new).collect(Collectors.toList());
+            return ids.stream().mapToObj(User::new).toList();
         };
 
         Consumer<List<User>> logger = users -> {
@@ -89,15 +90,15 @@ public class AsyncExample {
     public static void example3() {
         ExecutorService executorService = Executors.newSingleThreadExecutor();
         // pretending a list of user id
-        Supplier<List<Long>> supplyIDs = () -> {
+        Supplier<LongIdBatch> supplyIDs = () -> {
             sleep(200);
             System.out.println("Supplier - Running in thread: " + Thread.currentThread().getName());
-            return Arrays.asList(1L, 2L, 3L);
+            return LongIdBatch.of(1L, 2L, 3L);
         };
 
         // pretending fetching users from DB
         // ---> instead of returning List<User> you wrap it in CompletableFuture
-        Function<List<Long>, CompletableFuture<List<User>>> fetchUser = ids -> {
+        Function<LongIdBatch, CompletableFuture<List<User>>> fetchUser = ids -> {
             sleep(300);
             System.out.println("Function - Running in thread: " + Thread.currentThread().getName());
 
@@ -107,7 +108,7 @@ public class AsyncExample {
                 // ---> this will run in a separate thread
                 System.out.println("Internal Supplier - Running in thread: " + Thread.currentThread().getName());
 
-                return ids.stream().map(User::new).collect(Collectors.toList());
+                return ids.stream().mapToObj(User::new).toList();
             };
 
             // ---> note: nothing is getting executed now, until the supplier's get method is called.
@@ -144,15 +145,15 @@ public class AsyncExample {
         ExecutorService executorService1 = Executors.newSingleThreadExecutor();
         ExecutorService executorService2 = Executors.newSingleThreadExecutor();
 
-        Supplier<List<Long>> supplyIDs = () -> {
+        Supplier<LongIdBatch> supplyIDs = () -> {
             sleep(200);
             System.out.println("Supplier - Running in thread: " + Thread.currentThread().getName());
-            return Arrays.asList(1L, 2L, 3L);
+            return LongIdBatch.of(1L, 2L, 3L);
         };
 
         // pretending fetching users from DB
         // instead of returning List<User> you wrap it in CompletableFuture
-        Function<List<Long>, CompletableFuture<List<User>>> fetchUser = ids -> {
+        Function<LongIdBatch, CompletableFuture<List<User>>> fetchUser = ids -> {
             sleep(300);
             System.out.println("Function - Running in thread: " + Thread.currentThread().getName());
 
@@ -162,7 +163,7 @@ public class AsyncExample {
                 // this will run in a separate thread
                 System.out.println("Internal Supplier - Running in thread: " + Thread.currentThread().getName());
 
-                return ids.stream().map(User::new).collect(Collectors.toList());
+                return ids.stream().mapToObj(User::new).toList();
             };
 
             // note: nothing is getting executed now, until the supplier's get method is called.
@@ -193,11 +194,47 @@ public class AsyncExample {
         executorService2.shutdown();
     }
 
+    /**
+     * to demonstrate recording the threads of example4 with a tracer, instead of printing them
+     * run with -Dstage.tracing=true, without it the stages are not wrapped at all
+     * see " ---> "
+     */
+    public static void example5() {
+        ExecutorService executorService1 = Executors.newSingleThreadExecutor();
+        ExecutorService executorService2 = Executors.newSingleThreadExecutor();
+        StageTracer tracer = StageTracer.fromConfiguration();
+        if (!tracer.isEnabled()) {
+            System.out.println("tracing is disabled, run with -D" + StageTracer.ENABLED_PROPERTY + "=true");
+        }
+
+        Supplier<LongIdBatch> supplyIDs = () -> LongIdBatch.of(1L, 2L, 3L);
+        Function<LongIdBatch, List<User>> fetchUser = ids -> ids.stream().mapToObj(User::new).toList();
+        Consumer<List<User>> logger = users -> {
+        };
+
+        // run the chain many times, the summary of one run would not say much
+        List<CompletableFuture<Void>> runs = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            // ---> one trace per run of the chain, it wraps the stages
+            StageTracer.Trace trace = tracer.begin();
+            runs.add(CompletableFuture.supplyAsync(trace.supplier("supplyIDs", supplyIDs))
+                    .thenApplyAsync(trace.function("fetchUser", fetchUser), executorService1)
+                    .thenAcceptAsync(trace.consumer("logger", logger), executorService2));
+        }
+        CompletableFuture.allOf(runs.toArray(CompletableFuture[]::new)).join();
+
+        // ---> the queue wait shows how long each stage waited for its executor, the hops how often it changed thread
+        tracer.dump(System.out);
+        executorService1.shutdown();
+        executorService2.shutdown();
+    }
+
     public static void main(String[] args) {
         //example1();
         //example2();
         //example3();
-        example4();
+        //example4();
+        example5();
     }
 
     private static void sleep(int timeout) {
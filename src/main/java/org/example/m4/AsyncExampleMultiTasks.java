@@ -1,14 +1,35 @@
 package org.example.m4;
 
+import org.example.m4.aggregate.IntFold;
+import org.example.m4.cache.AsyncLoadingCache;
+import org.example.m4.cancel.CancellableFuture;
+import org.example.m4.flow.FetchProcessor;
+import org.example.m4.flow.IdChunkPublisher;
+import org.example.m4.join.StreamingHashJoin;
+import org.example.m4.loader.BatchLoader;
+import org.example.m4.loader.ChunkedFetcher;
+import org.example.m4.model.ColumnBatch;
 import org.example.m4.model.Email;
+import org.example.m4.model.LongIdBatch;
 import org.example.m4.model.User;
+import org.example.m4.resilience.Hedger;
+import org.example.m4.structured.CompletableFutureFanOut;
+import org.example.m4.structured.FanOut;
+import org.example.m4.structured.StructuredFanOut;
+import org.example.m4.timer.HashedWheelTimer;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
@@ -23,33 +44,32 @@ public class AsyncExampleMultiTasks {
      */
     public static void example1() {
 
-        ExecutorService executorService = Executors.newSingleThreadExecutor();
         // pretending a list of user id
-        Supplier<List<Long>> supplyIDs = () -> {
+        Supplier<LongIdBatch> supplyIDs = () -> {
             sleep(200);
             System.out.println("Supplier - Running in thread: " + Thread.currentThread().getName());
-            return Arrays.asList(1L, 2L, 3L);
+            return LongIdBatch.of(1L, 2L, 3L);
         };
 
         // pretending fetching users
-        Function<List<Long>, CompletableFuture<List<User>>> fetchUser = ids -> {
+        Function<LongIdBatch, CompletableFuture<List<User>>> fetchUser = ids -> {
             sleep(300);
             System.out.println("Function - Running in thread: " + Thread.currentThread().getName());
 
             Supplier<List<User>> userSupplier = () -> {
                 System.out.println("Internal User Supplier - Running in thread: " + Thread.currentThread().getName());
-                return ids.stream().map(User::new).toList();
+                return ids.stream().mapToObj(User::new).toList();
             };
 
             return CompletableFuture.supplyAsync(userSupplier);
         };
 
         // pretending fetching emails
-        Function<List<Long>, CompletableFuture<List<Email>>> fetchEmails = ids -> {
+        Function<LongIdBatch, CompletableFuture<List<Email>>> fetchEmails = ids -> {
             sleep(500);
             Supplier<List<Email>> emailSupplier = () -> {
                 System.out.println("Internal Email Supplier - Running in thread: " + Thread.currentThread().getName());
-                return ids.stream().map(Email::new).toList();
+                return ids.stream().mapToObj(Email::new).toList();
             };
 
             return CompletableFuture.supplyAsync(emailSupplier);
@@ -70,9 +90,6 @@ public class AsyncExampleMultiTasks {
         // the main thread will finish here before the other threads having chance to show anything
         // so, we sleep here
         sleep(1500);
-
-        // remember to shut down the executor
-        executorService.shutdown();
     }
 
     /**
@@ -84,33 +101,33 @@ public class AsyncExampleMultiTasks {
     public static void example2() {
         ExecutorService executorService = Executors.newSingleThreadExecutor();
         // pretending a list of user id
-        Supplier<List<Long>> supplyIDs = () -> {
+        Supplier<LongIdBatch> supplyIDs = () -> {
             sleep(200);
             System.out.println("Supplier - Running in thread: " + Thread.currentThread().getName());
-            return Arrays.asList(1L, 2L, 3L);
+            return LongIdBatch.of(1L, 2L, 3L);
         };
 
         // pretending fetching users
-        Function<List<Long>, CompletableFuture<List<User>>> fetchUser1 = ids -> {
+        Function<LongIdBatch, CompletableFuture<List<User>>> fetchUser1 = ids -> {
             sleep(150);
             System.out.println("Function - Fetching Users 1 (FASTER) - Running in thread: " + Thread.currentThread().getName());
 
             Supplier<List<User>> userSupplier = () -> {
                 System.out.println("Internal User Supplier 1 (FASTER) - Running in thread: " + Thread.currentThread().getName());
-                return ids.stream().map(User::new).toList();
+                return ids.stream().mapToObj(User::new).toList();
             };
 
             return CompletableFuture.supplyAsync(userSupplier);
         };
 
         // pretending fetching users
-        Function<List<Long>, CompletableFuture<List<User>>> fetchUser2 = ids -> {
+        Function<LongIdBatch, CompletableFuture<List<User>>> fetchUser2 = ids -> {
             sleep(300);
             System.out.println("Function - Fetching Users 2 - Running in thread: " + Thread.currentThread().getName());
 
             Supplier<List<User>> userSupplier = () -> {
                 System.out.println("Internal User Supplier 2 - Running in thread: " + Thread.currentThread().getName());
-                return ids.stream().map(User::new).toList();
+                return ids.stream().mapToObj(User::new).toList();
             };
 
             return CompletableFuture.supplyAsync(userSupplier);
@@ -298,12 +315,410 @@ public class AsyncExampleMultiTasks {
                 newObject -> System.out.println("New Object: " + newObject)
         ).join();
     }
+
+    /**
+     * to demonstrate batching the requests of many independent callers into one bulk fetch
+     * see "--->"
+     */
+    public static void example6() {
+        // pretending fetching users, one round trip to the backend per call
+        Function<LongIdBatch, CompletableFuture<List<User>>> fetchUser = ids -> {
+            System.out.println("Function - Fetching " + ids.size() + " users - Running in thread: " + Thread.currentThread().getName());
+            return CompletableFuture.supplyAsync(() -> ids.stream().mapToObj(User::new).toList());
+        };
+
+        // ---> requests arriving within 10 ms are sent together, at most 100 distinct ids per round trip
+        BatchLoader<User> userLoader = new BatchLoader<>(fetchUser, 100, 10);
+
+        // ---> 1000 independent callers, each asking for a handful of ids; many of them ask for the same ids
+        List<CompletableFuture<List<User>>> callers = new ArrayList<>();
+        for (long caller = 0; caller < 1000; caller++) {
+            callers.add(userLoader.loadMany(LongIdBatch.of(caller % 150, (caller + 1) % 150, (caller + 2) % 150)));
+        }
+
+        CompletableFuture.allOf(callers.toArray(CompletableFuture[]::new)).join();
+
+        // ---> 3000 loads, but only about a dozen round trips: ids are de-duplicated within each batch
+        System.out.println("Loads: " + userLoader.loadCalls() + "; round trips: " + userLoader.batchCalls());
+    }
+
+    /**
+     * to demonstrate caching the in-flight CompletableFutures in front of the fetch functions
+     * see "--->"
+     */
+    public static void example7() {
+        // pretending fetching emails, one round trip of 100 ms to the backend per call
+        // the latency is a timer, so it does not block the thread dispatching the batches
+        Function<LongIdBatch, CompletableFuture<List<Email>>> fetchEmails = ids -> HashedWheelTimer.shared().delay(100)
+                .thenApply(nil -> ids.stream().mapToObj(Email::new).toList());
+
+        BatchLoader<Email> emailLoader = new BatchLoader<>(fetchEmails, 100, 10);
+
+        // ---> the cache stores the future, not the value:
+        // the second caller asking for an id still being fetched waits for the same load, not a second one
+        // (each caller gets a copy of the cached future, so it cannot complete it for the others)
+        AsyncLoadingCache<Email> emailCache = new AsyncLoadingCache<>(emailLoader::load, 1_000);
+
+        var first = emailCache.get(42L);
+        var second = emailCache.get(42L);
+        System.out.println("Loads for two callers of an in-flight id: " + emailLoader.loadCalls()
+                + "; cache hits: " + emailCache.stats().hitCount());
+        System.out.println("Email: " + first.join() + ", " + second.join());
+
+        // ---> a hot set of 100 ids, mixed with a scan of 10 000 one-off ids that should not flush it
+        List<CompletableFuture<Email>> requests = new ArrayList<>();
+        for (long i = 0; i < 10_000; i++) {
+            requests.add(emailCache.get(i % 100));
+            requests.add(emailCache.get(1_000_000 + i));
+        }
+        CompletableFuture.allOf(requests.toArray(CompletableFuture[]::new)).join();
+
+        var stats = emailCache.stats();
+        System.out.println("Hit rate: " + stats.hitRate() + "; evictions: " + stats.evictionCount()
+                + "; average load (ms): " + stats.averageLoadPenalty() / 1_000_000
+                + "; round trips: " + emailLoader.batchCalls());
+    }
+
+    /**
+     * to demonstrate hedging the slow requests, and cancelling the losers instead of letting them run
+     * compare with example2 and example3, where the losing futures keep sleeping after the winner completes
+     * see "--->"
+     */
+    public static void example8() {
+        ExecutorService executorService = Executors.newVirtualThreadPerTaskExecutor();
+        AtomicInteger interrupted = new AtomicInteger();
+
+        // pretending a backend with a long tail: 95% of the calls take 20 ms, 5% take 1 second
+        Callable<List<User>> fetchUsers = () -> {
+            try {
+                Thread.sleep(ThreadLocalRandom.current().nextInt(20) == 0 ? 1000 : 20);
+            } catch (InterruptedException e) {
+                // ---> the loser is interrupted, so its thread is released right away
+                interrupted.incrementAndGet();
+                throw e;
+            }
+            return LongIdBatch.of(1L, 2L, 3L).mapToObj(User::new);
+        };
+
+        // ---> a backup is sent when the primary is slower than the p90 of the recent calls, 10 ms to 500 ms
+        Hedger hedger = new Hedger(90, 10, 500);
+
+        for (int round = 0; round < 5; round++) {
+            long[] latencies = new long[100];
+            List<CompletableFuture<List<User>>> requests = new ArrayList<>();
+            for (int i = 0; i < latencies.length; i++) {
+                int request = i;
+                long start = System.nanoTime();
+                requests.add(hedger.hedge(fetchUsers, executorService)
+                        .whenComplete((users, exception) -> latencies[request] = (System.nanoTime() - start) / 1_000_000));
+            }
+            CompletableFuture.allOf(requests.toArray(CompletableFuture[]::new)).join();
+
+            // ---> once the hedger has learnt the latencies, the slowest request takes about 20 ms + the hedge delay,
+            // instead of 1 second, unless the backup happens to be slow as well
+            System.out.println("Round " + round + " - slowest request: " + Arrays.stream(latencies).max().orElseThrow()
+                    + " ms; hedge delay: " + hedger.hedgeDelayMillis() + " ms");
+        }
+
+        System.out.println("Requests: " + hedger.requestCount() + "; backups sent: " + hedger.hedgeCount()
+                + "; won by the backup: " + hedger.backupWinCount() + "; losers interrupted: " + interrupted.get());
+
+        executorService.shutdown();
+    }
+
+    /**
+     * to demonstrate cancellation that reaches the running tasks
+     * compare with example3, where cf1 and cf2 keep running after cf3 wins
+     * see "--->"
+     */
+    public static void example9() {
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+
+        // ---> Part 1: the losers of anyOf() are cancelled, and their threads interrupted
+        Function<Integer, Supplier<String>> slow = timeout -> () -> {
+            try {
+                Thread.sleep(timeout);
+            } catch (InterruptedException e) {
+                System.out.println("s" + timeout + " interrupted - Running in thread: " + Thread.currentThread().getName());
+                throw new IllegalStateException(e);
+            }
+            return "s" + timeout;
+        };
+
+        var cf1 = CancellableFuture.supplyAsync(slow.apply(2000), executorService);
+        var cf2 = CancellableFuture.supplyAsync(slow.apply(1500), executorService);
+        var cf3 = CancellableFuture.supplyAsync(slow.apply(100), executorService);
+
+        CompletableFuture.anyOf(cf1, cf2, cf3).thenAccept(string -> {
+            System.out.println("cf completes: " + string);
+            // ---> with a plain CompletableFuture, cancel() would not stop s2000 and s1500
+            cf1.cancel(true);
+            cf2.cancel(true);
+        }).join();
+
+        // ---> Part 2: cancelling the end of a chain cancels it up to its source
+        var supply = CancellableFuture.supplyAsync(slow.apply(1000), executorService);
+
+        // ---> the blocking fetch is its own task inside thenCompose, so it can be interrupted as well
+        var fetch = supply.thenCompose(ids -> CancellableFuture.supplyAsync(slow.apply(1000), executorService));
+
+        var logs = fetch.thenAccept(result -> System.out.println("Consumer - never runs"));
+
+        sleep(200);
+        // ---> logs is the only dependent of fetch, and fetch the only dependent of supply:
+        // the whole chain is abandoned, so supply is cancelled and its thread interrupted
+        logs.cancel(true);
+        sleep(100);
+
+        System.out.println("Supply : cancelled -> " + supply.isCancelled());
+        System.out.println("Fetch : cancelled -> " + fetch.isCancelled());
+
+        executorService.shutdown();
+    }
+
+    /**
+     * to demonstrate folding the results the moment each task completes, instead of allOf() then join() (example4)
+     * see "--->"
+     */
+    public static void example10() {
+        Supplier<Integer> s1 = () -> {
+            sleep(200);
+            System.out.println("s1 - 200");
+            return 200;
+        };
+
+        Supplier<Integer> s2 = () -> {
+            sleep(150);
+            System.out.println("s2 - 150");
+            return 150;
+        };
+
+        Supplier<Integer> s3 = () -> {
+            sleep(100);
+            System.out.println("s3 - 100");
+            return 100;
+        };
+
+        var cf1 = CompletableFuture.supplyAsync(s1);
+        var cf2 = CompletableFuture.supplyAsync(s2);
+        var cf3 = CompletableFuture.supplyAsync(s3);
+
+        // ---> each result is folded into a primitive int as soon as its future completes:
+        // no second pass over the futures, no intermediate Stream<Integer>
+        IntFold smallest = IntFold.min(List.of(cf1, cf2, cf3), Integer::intValue);
+
+        // ---> the partial aggregate can be read at any time
+        sleep(120);
+        System.out.println("Partial min after " + smallest.completedCount() + " of " + smallest.size() + " - " + smallest.current());
+
+        // ---> the final value is ready the moment the last future lands
+        int smallestNumber = smallest.result().join();
+
+        System.out.println("Min result - " + smallestNumber + " - " + Thread.currentThread().getName());
+    }
+
+    /**
+     * to demonstrate simulating latency with a timer instead of a blocking sleep()
+     * see "--->"
+     */
+    public static void example11() {
+        // ---> ONE thread for everything
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        HashedWheelTimer timer = new HashedWheelTimer(1, TimeUnit.MILLISECONDS, 1024, executorService);
+
+        // pretending fetching users, the backend takes 200 ms
+        // ---> with sleep(200) the single thread could only serve 5 fetches per second
+        Function<LongIdBatch, CompletableFuture<List<User>>> fetchUser = ids -> timer.delay(200)
+                .thenApply(nil -> ids.mapToObj(User::new));
+
+        long start = System.currentTimeMillis();
+        List<CompletableFuture<List<User>>> fetches = new ArrayList<>();
+        for (long i = 0; i < 100_000; i++) {
+            fetches.add(fetchUser.apply(LongIdBatch.of(i)));
+        }
+        System.out.println("Pending timers: " + timer.pendingTimeouts());
+
+        CompletableFuture.allOf(fetches.toArray(CompletableFuture[]::new)).join();
+
+        // ---> 100 000 concurrent fetches of 200 ms each, in a bit more than 200 ms
+        System.out.println("Fetched " + fetches.size() + " users in " + (System.currentTimeMillis() - start) + " ms");
+
+        timer.stop();
+        executorService.shutdown();
+    }
+
+    /**
+     * to demonstrate the fan-out of example1 with a StructuredTaskScope, behind the same API as the CompletableFuture one
+     * StructuredTaskScope is a preview API in Java 21: run with --enable-preview
+     * see "--->"
+     */
+    public static void example12() {
+        ExecutorService executorService = Executors.newVirtualThreadPerTaskExecutor();
+
+        Supplier<LongIdBatch> supplyIDs = () -> {
+            sleep(200);
+            System.out.println("Supplier - Running in thread: " + Thread.currentThread().getName());
+            return LongIdBatch.of(1L, 2L, 3L);
+        };
+
+        // ---> the branches are plain blocking functions, they do not return CompletableFutures any more
+        Function<LongIdBatch, List<User>> fetchUser = ids -> {
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                System.out.println("Function - Fetching users interrupted - Running in thread: " + Thread.currentThread());
+                throw new IllegalStateException(e);
+            }
+            return ids.mapToObj(User::new);
+        };
+
+        Function<LongIdBatch, List<Email>> fetchEmails = ids -> {
+            sleep(100);
+            throw new IllegalStateException("No emails");
+        };
+
+        for (FanOut fanOut : List.of(new CompletableFutureFanOut(executorService), new StructuredFanOut())) {
+            System.out.println(fanOut.getClass().getSimpleName());
+
+            // ---> unlike example1: the failure of the emails stops the users fetch right away,
+            // and we wait with join() instead of sleep(1500)
+            var result = fanOut.all(supplyIDs, fetchUser, fetchEmails,
+                    (users, emails) -> "Total Users: " + users.size() + "; total emails: " + emails.size());
+            try {
+                System.out.println(result.join());
+            } catch (RuntimeException e) {
+                System.out.println("Failed: " + e.getCause().getMessage());
+            }
+
+            // ---> shutdown-on-success: the first fetch to succeed wins, the slow one is interrupted
+            var users = fanOut.any(supplyIDs, List.of(fetchUser, ids -> {
+                sleep(50);
+                return ids.mapToObj(User::new);
+            })).join();
+            System.out.println("First users: " + users);
+
+            sleep(100);
+        }
+
+        executorService.shutdown();
+    }
+
+    /**
+     * to demonstrate fetching a million ids in chunks fetched in parallel, instead of mapping them all in one supplyAsync() (ChunkedFetcher)
+     * see "--->"
+     */
+    public static void example13() {
+        LongIdBatch ids = LongIdBatch.range(1, 1_000_001);
+
+        // the fetchUser of example1: the whole list on one thread
+        Function<LongIdBatch, CompletableFuture<List<User>>> fetchUser =
+                batch -> CompletableFuture.supplyAsync(() -> batch.stream().mapToObj(User::new).toList());
+
+        // ---> chunks of 50 000 ids, at most one chunk per core at a time, put back together in the order of the ids
+        int cores = Runtime.getRuntime().availableProcessors();
+        ChunkedFetcher<User> chunkedFetchUser = ChunkedFetcher.mapping(User::new, 50_000, cores, ForkJoinPool.commonPool());
+
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            List<User> users = fetchUser.apply(ids).join();
+            long single = (System.nanoTime() - start) / 1_000_000;
+
+            start = System.nanoTime();
+            List<User> chunked = chunkedFetchUser.fetch(ids).join();
+            System.out.println("one supplyAsync: " + single + " ms, " + cores + " chunks at a time: "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms"
+                    + " - same order: " + (users.get(123_456).getId() == chunked.get(123_456).getId()));
+        }
+    }
+
+    /**
+     * to demonstrate the users and emails of example1 as columnar batches instead of lists of objects (ColumnBatch)
+     * see "--->"
+     */
+    public static void example14() {
+        LongIdBatch ids = LongIdBatch.range(1, 1_000_001);
+
+        // ---> the stages output batches: one long[] each, or a direct buffer off the heap
+        Function<LongIdBatch, CompletableFuture<ColumnBatch<User>>> fetchUser = batch -> CompletableFuture.supplyAsync(
+                () -> ColumnBatch.onHeap(batch, User::new, User::setId));
+        Function<LongIdBatch, CompletableFuture<ColumnBatch<Email>>> fetchEmails = batch -> CompletableFuture.supplyAsync(
+                () -> ColumnBatch.offHeap(batch, Email::new, Email::setId));
+
+        long before = usedHeap();
+        List<User> userList = ids.mapToObj(User::new);
+        System.out.println("List<User>: " + (usedHeap() - before) / 1024 + " KB of heap");
+
+        before = usedHeap();
+        ColumnBatch<User> users = fetchUser.apply(ids).join();
+        ColumnBatch<Email> emails = fetchEmails.apply(ids).join();
+        System.out.println("ColumnBatch<User> + ColumnBatch<Email>: " + (usedHeap() - before) / 1024 + " KB of heap, plus "
+                + emails.sizeInBytes() / 1024 + " KB off the heap");
+
+        // ---> the same User object is handed out for each row: read it, do not keep it
+        long[] sum = new long[1];
+        users.forEachFlyweight(user -> sum[0] += user.getId());
+        System.out.println(users + " " + emails + " - sum of the ids: " + sum[0] + ", list size: " + userList.size());
+    }
+
+    /**
+     * to demonstrate joining the users and emails of example1 by id while the emails still arrive in chunks,
+     * instead of waiting for both lists with thenAcceptBoth (StreamingHashJoin)
+     * see "--->"
+     */
+    public static void example15() {
+        record UserEmail(User user, Email email) {
+        }
+        LongIdBatch ids = LongIdBatch.range(1, 200_001);
+
+        // the fetchUser of example1: the whole list at once, a bit later
+        CompletableFuture<List<User>> users = CompletableFuture.supplyAsync(() -> {
+            sleep(100);
+            return ids.mapToObj(User::new);
+        });
+
+        // the emails arrive as chunks of 10 000, at most 2 fetches in flight
+        IdChunkPublisher idChunks = IdChunkPublisher.of(ids, 10_000, ForkJoinPool.commonPool());
+        FetchProcessor<LongIdBatch, List<Email>> fetchEmails = new FetchProcessor<>(batch -> CompletableFuture.supplyAsync(() -> {
+            sleep(10);
+            return batch.mapToObj(Email::new);
+        }), 2);
+
+        // ---> a pair goes downstream as soon as both its user and its email are there
+        List<UserEmail> joined = new ArrayList<>();
+        StreamingHashJoin<User, Email, UserEmail> join = new StreamingHashJoin<>(User::getId, Email::getId, UserEmail::new, joined::add);
+        join.left(users);
+        idChunks.subscribe(fetchEmails);
+        fetchEmails.subscribe(join.rightSubscriber());
+
+        long start = System.nanoTime();
+        long matched = join.result().join();
+        System.out.println(matched + " users joined with their email in " + (System.nanoTime() - start) / 1_000_000 + " ms"
+                + ", first: " + joined.get(0) + ", last: " + joined.get(joined.size() - 1));
+    }
+
+    // the heap in use after a collection, only a rough measure
+    private static long usedHeap() {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
     public static void main(String[] args) {
         //example1();
         //example2();
         //example3();
         //example4();
-        example5();
+        //example5();
+        //example6();
+        //example7();
+        //example8();
+        //example9();
+        //example10();
+        //example11();
+        //example12();
+        //example13();
+        //example14();
+        example15();
 
     }
 
@@ -1,35 +1,47 @@
 package org.example.m4;
 
+import org.example.m4.failure.Failures;
+import org.example.m4.failure.StacklessException;
+import org.example.m4.model.LongIdBatch;
 import org.example.m4.model.User;
+import org.example.m4.resilience.Bulkhead;
+import org.example.m4.resilience.CircuitBreaker;
+import org.example.m4.resilience.Retrier;
+import org.example.m4.resilience.RetryBudget;
+import org.example.m4.timer.HashedWheelTimer;
 
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
-import java.util.stream.Collectors;
 
 public class AsyncException {
 
+    // ---> created once, thrown by every failing supplier of example7
+    private static final StacklessException NO_DATA = Failures.preallocated("No data");
+
     /**
      * to demonstrate using exceptionally()
      * exceptionally() can grab this exception, keep it and provide a new value - like handle()
      * in this case the exception will not be forwarded to downstreams
      */
     public static void example1() {
-        Supplier<List<Long>> supplyIDs = () -> {
+        Supplier<LongIdBatch> supplyIDs = () -> {
             sleep(200);
             System.out.println("Supplier - Running in thread: " + Thread.currentThread().getName());
              throw new IllegalStateException("No data");
             // with the following line, you see no exceptions when run example1()
-            //return Arrays.asList(1L, 2L, 3L);
+            //return LongIdBatch.of(1L, 2L, 3L);
         };
 
-        Function<List<Long>, List<User>> fetchUsers = ids -> {
+        Function<LongIdBatch, List<User>> fetchUsers = ids -> {
             sleep(300);
             System.out.println("Function - Running in thread: " + Thread.currentThread().getName());
-            return ids.stream().map(User::new).collect(Collectors.toList());
+            return ids.stream().mapToObj(User::new).toList();
         };
 
 
@@ -38,16 +50,16 @@ public class AsyncException {
             users.forEach(System.out::println);
         };
 
-        CompletableFuture<List<Long>> supply = CompletableFuture.supplyAsync(supplyIDs);
+        CompletableFuture<LongIdBatch> supply = CompletableFuture.supplyAsync(supplyIDs);
 
         // exceptionally catch the exception from the upstream
-        // since the exceptionally() returns a value of the same type List<Long>
+        // since the exceptionally() returns a value of the same type LongIdBatch
         // the exception will not forward to downstream i.e. you recover from the exception
         // see example3 -> when you do not return a default value,
         // then the exception will be forwarded to all downstream tasks
-        CompletableFuture<List<Long>> exceptionally = supply.exceptionally(e -> {
+        CompletableFuture<LongIdBatch> exceptionally = supply.exceptionally(e -> {
             System.out.println("Exceptionally - Running in thread: " + Thread.currentThread().getName());
-            return List.of();
+            return LongIdBatch.empty();
         });
 
         CompletableFuture<List<User>> fetch = exceptionally.thenApply(fetchUsers);
@@ -73,18 +85,18 @@ public class AsyncException {
      * see "--->"
      */
     public static void example2() {
-        Supplier<List<Long>> supplyIDs = () -> {
+        Supplier<LongIdBatch> supplyIDs = () -> {
             sleep(200);
             System.out.println("Supplier - Running in thread: " + Thread.currentThread().getName());
             throw new IllegalStateException("No data");
             // with the following line, you see no exceptions when run example1()
-            //return Arrays.asList(1L, 2L, 3L);
+            //return LongIdBatch.of(1L, 2L, 3L);
         };
 
-        Function<List<Long>, List<User>> fetchUsers = ids -> {
+        Function<LongIdBatch, List<User>> fetchUsers = ids -> {
             sleep(300);
             System.out.println("Function - Running in thread: " + Thread.currentThread().getName());
-            return ids.stream().map(User::new).collect(Collectors.toList());
+            return ids.stream().mapToObj(User::new).toList();
         };
 
 
@@ -93,12 +105,12 @@ public class AsyncException {
             users.forEach(System.out::println);
         };
 
-        CompletableFuture<List<Long>> supply = CompletableFuture.supplyAsync(supplyIDs);
+        CompletableFuture<LongIdBatch> supply = CompletableFuture.supplyAsync(supplyIDs);
 
         // exceptionally catch the exception from the upstream
-        CompletableFuture<List<Long>> exceptionally = supply.exceptionally(e -> {
+        CompletableFuture<LongIdBatch> exceptionally = supply.exceptionally(e -> {
             System.out.println("Exceptionally - Running in thread: " + Thread.currentThread().getName());
-            return List.of();
+            return LongIdBatch.empty();
         });
 
         CompletableFuture<List<User>> fetch = exceptionally.thenApply(fetchUsers);
@@ -137,18 +149,18 @@ public class AsyncException {
      * see "--->"
      */
     public static void example3() {
-        Supplier<List<Long>> supplyIDs = () -> {
+        Supplier<LongIdBatch> supplyIDs = () -> {
             sleep(200);
             System.out.println("Supplier - Running in thread: " + Thread.currentThread().getName());
             throw new IllegalStateException("No data");
             // with the following line, you see no exceptions when run example1()
-            //return Arrays.asList(1L, 2L, 3L);
+            //return LongIdBatch.of(1L, 2L, 3L);
         };
 
-        Function<List<Long>, List<User>> fetchUsers = ids -> {
+        Function<LongIdBatch, List<User>> fetchUsers = ids -> {
             sleep(300);
             System.out.println("Function - Running in thread: " + Thread.currentThread().getName());
-            return ids.stream().map(User::new).collect(Collectors.toList());
+            return ids.stream().mapToObj(User::new).toList();
         };
 
 
@@ -157,7 +169,7 @@ public class AsyncException {
             users.forEach(System.out::println);
         };
 
-        CompletableFuture<List<Long>> supply = CompletableFuture.supplyAsync(supplyIDs);
+        CompletableFuture<LongIdBatch> supply = CompletableFuture.supplyAsync(supplyIDs);
 
         // catch the exception from the upstream
         // --->
@@ -166,8 +178,8 @@ public class AsyncException {
         // Supply : done -> true, Exception -> true
         // Fetch : done -> true, Exception -> true
         // Log : done -> true, Exception -> true
-        CompletableFuture<List<Long>> whenComplete = supply.whenComplete(
-                /* takes BiConsumer (List<Long>, exception)*/
+        CompletableFuture<LongIdBatch> whenComplete = supply.whenComplete(
+                /* takes BiConsumer (LongIdBatch, exception)*/
                 (ids, exception) -> {
                     System.out.println("whenComplete - Running in thread: " + Thread.currentThread().getName());
                     if (exception != null) {
@@ -205,18 +217,18 @@ public class AsyncException {
      * see "--->"
      */
     public static void example4() {
-        Supplier<List<Long>> supplyIDs = () -> {
+        Supplier<LongIdBatch> supplyIDs = () -> {
             sleep(200);
             System.out.println("Supplier - Running in thread: " + Thread.currentThread().getName());
             throw new IllegalStateException("No data");
             // with the following line, you see no exceptions when run example1()
-            //return Arrays.asList(1L, 2L, 3L);
+            //return LongIdBatch.of(1L, 2L, 3L);
         };
 
-        Function<List<Long>, List<User>> fetchUsers = ids -> {
+        Function<LongIdBatch, List<User>> fetchUsers = ids -> {
             sleep(300);
             System.out.println("Function - Running in thread: " + Thread.currentThread().getName());
-            return ids.stream().map(User::new).collect(Collectors.toList());
+            return ids.stream().mapToObj(User::new).toList();
         };
 
 
@@ -225,7 +237,7 @@ public class AsyncException {
             users.forEach(System.out::println);
         };
 
-        CompletableFuture<List<Long>> supply = CompletableFuture.supplyAsync(supplyIDs);
+        CompletableFuture<LongIdBatch> supply = CompletableFuture.supplyAsync(supplyIDs);
 
         // catch the exception from the upstream
         // --->
@@ -234,14 +246,14 @@ public class AsyncException {
         // Supply : done -> true, Exception -> true
         // Fetch : done -> true, Exception -> false
         // Log : done -> true, Exception -> false
-        CompletableFuture<List<Long>> handle = supply.handle(
-                /* ---> takes BiFunction (List<Long>, exception) -> List<Long> */
+        CompletableFuture<LongIdBatch> handle = supply.handle(
+                /* ---> takes BiFunction (LongIdBatch, exception) -> LongIdBatch */
                 (ids, exception) -> {
                     System.out.println("whenComplete - Running in thread: " + Thread.currentThread().getName());
                     if (exception != null) {
                         // log: java.lang.IllegalStateException: No data
                         System.out.println(exception.getMessage());
-                        return List.of();
+                        return LongIdBatch.empty();
                     } else {
                         // when there is no exception
                         return ids;
@@ -267,11 +279,133 @@ public class AsyncException {
                 ", Exception -> " + logs.isCompletedExceptionally());
     }
 
+    /**
+     * to demonstrate retrying a transient failure with backoff, instead of recovering with an empty value (Retrier)
+     * and how the retry budget stops the retries from multiplying the load when the backend is down
+     * see "--->"
+     */
+    public static void example5() {
+        // ---> up to 4 attempts, backoff between 0 and 10, 20, 40 ms; retries are at most half of the requests
+        Retrier retrier = new Retrier(4, 10, 200, new RetryBudget(0.5, 10));
+        List<CompletableFuture<List<User>>> fetches = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            // ---> the supplier is called again for each attempt, 30% of them fail
+            fetches.add(retrier.retry(() -> fetchUsers(LongIdBatch.of(1L, 2L, 3L), 0.3))
+                    .exceptionally(e -> List.of()));
+        }
+        CompletableFuture.allOf(fetches.toArray(CompletableFuture[]::new)).join();
+        System.out.println("30% failures: " + retrier.stats());
+
+        // ---> the backend is down: without the budget that would be 4000 attempts, 4 per request
+        Retrier outage = new Retrier(4, 10, 200, new RetryBudget(0.5, 10));
+        fetches.clear();
+        for (int i = 0; i < 1000; i++) {
+            fetches.add(outage.retry(() -> fetchUsers(LongIdBatch.of(1L, 2L, 3L), 1.0))
+                    .exceptionally(e -> List.of()));
+        }
+        CompletableFuture.allOf(fetches.toArray(CompletableFuture[]::new)).join();
+        System.out.println("backend down: " + outage.stats());
+    }
+
+    /**
+     * to demonstrate failing fast instead of calling a dependency that keeps failing (CircuitBreaker)
+     * and capping the calls in flight to it (Bulkhead)
+     * see "--->"
+     */
+    public static void example6() {
+        AtomicInteger backendCalls = new AtomicInteger();
+        AtomicInteger failureRate = new AtomicInteger(100);
+        Function<LongIdBatch, CompletableFuture<List<User>>> fetchUsers = ids -> {
+            backendCalls.incrementAndGet();
+            return fetchUsers(ids, failureRate.get() / 100.0);
+        };
+
+        // ---> opens when half of the last 20 calls failed, or 80% were slower than 100 ms; probes again after 200 ms
+        CircuitBreaker breaker = new CircuitBreaker("users", 20, 0.5, 0.8, 100, 200);
+        // ---> at most 10 calls in flight to the users backend
+        Bulkhead bulkhead = new Bulkhead("users", 10);
+        Function<LongIdBatch, CompletableFuture<List<User>>> protectedFetch = bulkhead.wrap(breaker.wrap(fetchUsers));
+
+        // the backend is down: the breaker opens after its window is full, the other calls do not reach it
+        for (int i = 0; i < 1000; i++) {
+            protectedFetch.apply(LongIdBatch.of(1L, 2L, 3L)).exceptionally(e -> List.of()).join();
+        }
+        System.out.println("backend down: 1000 fetches, " + backendCalls.get() + " backend calls, "
+                + breaker.rejectedCount() + " failed fast, breaker " + breaker.state());
+
+        // the backend is back: after 200 ms, one call probes it, and the breaker closes
+        failureRate.set(0);
+        sleep(250);
+        protectedFetch.apply(LongIdBatch.of(1L, 2L, 3L)).join();
+        System.out.println("backend back: breaker " + breaker.state());
+
+        // ---> 50 fetches in a burst: at most 10 at a time reach the backend, the others are rejected right away
+        List<CompletableFuture<List<User>>> fetches = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            fetches.add(protectedFetch.apply(LongIdBatch.of(1L, 2L, 3L)).exceptionally(e -> List.of()));
+        }
+        CompletableFuture.allOf(fetches.toArray(CompletableFuture[]::new)).join();
+        System.out.println("50 fetches in a burst: " + bulkhead.rejectedCount() + " rejected by the bulkhead");
+    }
+
+    /**
+     * to demonstrate the cost of the failures when every request fails, and cheap failures (Failures)
+     * see "--->"
+     */
+    public static void example7() {
+        Supplier<LongIdBatch> failing = () -> {
+            throw new IllegalStateException("No data");
+        };
+        // ---> no stack trace to fill, neither for the failure nor for a CompletionException
+        Supplier<LongIdBatch> failingCheaply = () -> {
+            throw Failures.wrap(NO_DATA);
+        };
+
+        for (int round = 0; round < 3; round++) {
+            System.out.println("full stack: " + failMillion(failing) + " ms, preallocated: " + failMillion(failingCheaply) + " ms");
+        }
+
+        // ---> exceptionally() is given the "No data" itself, whether the chain wrapped it or not
+        CompletableFuture.supplyAsync(failing)
+                .thenApply(ids -> ids)
+                .exceptionally(Failures.recover(e -> {
+                    System.out.println("Recovered from " + e);
+                    return LongIdBatch.empty();
+                }))
+                .join();
+    }
+
+    // a million chains failing in their supplier, on the calling thread to measure only the failures
+    private static long failMillion(Supplier<LongIdBatch> supplyIDs) {
+        long start = System.nanoTime();
+        for (int i = 0; i < 1_000_000; i++) {
+            CompletableFuture.completedFuture(null)
+                    .thenApply(nil -> supplyIDs.get())
+                    .thenApply(ids -> ids.stream().mapToObj(User::new).toList())
+                    .exceptionally(e -> List.of())
+                    .join();
+        }
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    // pretending fetching users from a flaky backend, with 5 ms of latency
+    private static CompletableFuture<List<User>> fetchUsers(LongIdBatch ids, double failureRate) {
+        return HashedWheelTimer.shared().delay(5).thenApply(nil -> {
+            if (ThreadLocalRandom.current().nextDouble() < failureRate) {
+                throw new IllegalStateException("Backend unavailable");
+            }
+            return ids.stream().mapToObj(User::new).toList();
+        });
+    }
+
     public static void main(String args[]) {
         //example1();
         //example2();
-        example3();
+        //example3();
         //example4();
+        //example5();
+        //example6();
+        example7();
     }
 
     private static void sleep(int timeout) {
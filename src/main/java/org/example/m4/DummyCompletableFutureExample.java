@@ -1,16 +1,23 @@
 package org.example.m4;
 
+import org.example.m4.flow.ConsumerSink;
+import org.example.m4.flow.FetchProcessor;
+import org.example.m4.flow.IdChunkPublisher;
+import org.example.m4.model.LongIdBatch;
 import org.example.m4.model.User;
+import org.example.m4.pipeline.Pipeline;
+import org.example.m4.resilience.Deadline;
+import org.example.m4.timer.HashedWheelTimer;
 
-import java.util.Arrays;
+import java.time.Duration;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
-import java.util.stream.Collectors;
 
 public class DummyCompletableFutureExample {
 
@@ -18,16 +25,16 @@ public class DummyCompletableFutureExample {
      * to demonstrate using a dummy CompletableFuture<Void> to chain tasks
      */
     public static void example1() {
-        Supplier<List<Long>> supplyIDs = () -> {
+        Supplier<LongIdBatch> supplyIDs = () -> {
             sleep(200);
             System.out.println("Supplier - Running in thread: " + Thread.currentThread().getName());
-            return Arrays.asList(1L, 2L, 3L);
+            return LongIdBatch.of(1L, 2L, 3L);
         };
 
-        Function<List<Long>, List<User>> fetchUsers = ids -> {
+        Function<LongIdBatch, List<User>> fetchUsers = ids -> {
             sleep(300);
             System.out.println("Function - Running in thread: " + Thread.currentThread().getName());
-            return ids.stream().map(User::new).collect(Collectors.toList());
+            return ids.stream().mapToObj(User::new).toList();
         };
 
 
@@ -45,7 +52,7 @@ public class DummyCompletableFutureExample {
         // before: supply = CompletableFuture.supplyAsync(supplyIDs);
         // the supply is completed by the task inside the function supplyAsync()
         // for dummy, you need to manually complete it
-        CompletableFuture<List<Long>> supply = dummy.thenApply(nil /**/ -> supplyIDs.get());
+        CompletableFuture<LongIdBatch> supply = dummy.thenApply(nil /**/ -> supplyIDs.get());
 
         CompletableFuture<List<User>> fetch = supply.thenApply(fetchUsers);
 
@@ -67,16 +74,16 @@ public class DummyCompletableFutureExample {
     public static void example2() {
         ExecutorService executorService = Executors.newSingleThreadExecutor();
 
-        Supplier<List<Long>> supplyIDs = () -> {
+        Supplier<LongIdBatch> supplyIDs = () -> {
             sleep(200);
             System.out.println("Supplier - Running in thread: " + Thread.currentThread().getName());
-            return Arrays.asList(1L, 2L, 3L);
+            return LongIdBatch.of(1L, 2L, 3L);
         };
 
-        Function<List<Long>, List<User>> fetchUsers = ids -> {
+        Function<LongIdBatch, List<User>> fetchUsers = ids -> {
             sleep(300);
             System.out.println("Function - Running in thread: " + Thread.currentThread().getName());
-            return ids.stream().map(User::new).collect(Collectors.toList());
+            return ids.stream().mapToObj(User::new).toList();
         };
 
 
@@ -94,7 +101,7 @@ public class DummyCompletableFutureExample {
         // before: supply = CompletableFuture.supplyAsync(supplyIDs);
         // the supply is completed by the task inside the function supplyAsync()
         // for dummy, you need to manually complete it
-        CompletableFuture<List<Long>> supply = dummy.thenApply(nil /**/ -> supplyIDs.get());
+        CompletableFuture<LongIdBatch> supply = dummy.thenApply(nil /**/ -> supplyIDs.get());
 
         CompletableFuture<List<User>> fetch = supply.thenApply(fetchUsers);
 
@@ -115,9 +122,132 @@ public class DummyCompletableFutureExample {
         executorService.shutdown();
     }
 
+    /**
+     * to demonstrate one deadline, started with the dummy trigger, shared by all the stages
+     * see "--->"
+     */
+    public static void example3() {
+        Supplier<LongIdBatch> supplyIDs = () -> {
+            sleep(200);
+            System.out.println("Supplier - Running in thread: " + Thread.currentThread().getName());
+            return LongIdBatch.of(1L, 2L, 3L);
+        };
+
+        // ---> the fetch is a long-running task, so it returns a CompletableFuture
+        // its 300 ms of latency is a timer, it does not block a thread while waiting
+        Function<LongIdBatch, CompletableFuture<List<User>>> fetchUsers = ids -> HashedWheelTimer.shared().delay(300)
+                .thenApply(nil -> {
+                    System.out.println("Function - Running in thread: " + Thread.currentThread().getName());
+                    return ids.stream().mapToObj(User::new).toList();
+                });
+
+        Consumer<List<User>> logger = users -> {
+            System.out.println("Consumer - " + users.size() + " users - Running in thread: " + Thread.currentThread().getName());
+            users.forEach(System.out::println);
+        };
+
+        // ---> the whole chain has 400 ms, the clock starts when the dummy is completed
+        Deadline deadline = Deadline.of(Duration.ofMillis(400));
+
+        CompletableFuture<Void> dummy = new CompletableFuture<>();
+
+        // ---> each stage is skipped, or completed with its fallback value, once the budget is exhausted
+        CompletableFuture<LongIdBatch> supply = dummy.thenApply(deadline.apply(nil -> supplyIDs.get(), LongIdBatch.empty()));
+
+        // ---> the supplier takes 200 ms, so the fetch only has the 200 ms left instead of its 300 ms:
+        // it is completed with an empty list when the budget runs out, and the logger runs on time
+        CompletableFuture<List<User>> fetch = supply.thenCompose(deadline.compose(fetchUsers, List.of()));
+
+        CompletableFuture<Void> logs = fetch.thenAccept(logger);
+
+        deadline.start();
+        dummy.complete(null);
+
+        logs.join();
+        System.out.println("Fallbacks used: " + deadline.fallbackCount() + "; remaining: " + deadline.remaining().toMillis() + " ms");
+    }
+
+    /**
+     * to demonstrate the supply -> fetch -> log chain as a Flow pipeline, streaming 10 million ids with bounded memory
+     * see "--->"
+     */
+    public static void example4() {
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+
+        // ---> the supplier publishes chunks of 10 000 ids, only when they are requested
+        IdChunkPublisher supplyIDs = IdChunkPublisher.range(1, 10_000_001, 10_000, executorService);
+
+        // ---> at most 8 fetches at a time, a new chunk is requested only when a result was passed on
+        FetchProcessor<LongIdBatch, List<User>> fetchUsers = new FetchProcessor<>(
+                ids -> CompletableFuture.supplyAsync(() -> ids.stream().mapToObj(User::new).toList(), executorService), 8);
+
+        AtomicInteger maxInFlight = new AtomicInteger();
+        Consumer<List<User>> logger = users -> maxInFlight.accumulateAndGet(fetchUsers.inFlight(), Math::max);
+        ConsumerSink<List<User>> logs = new ConsumerSink<>(logger, 2);
+
+        long start = System.currentTimeMillis();
+        supplyIDs.subscribe(fetchUsers);
+        fetchUsers.subscribe(logs);
+
+        // ---> never more than 8 lists of users in memory, instead of one list of 10 million
+        System.out.println(logs.result().join() + " chunks of users logged in " + (System.currentTimeMillis() - start)
+                + " ms, at most " + maxInFlight.get() + " fetches in flight");
+
+        executorService.shutdown();
+    }
+
+    /**
+     * to demonstrate defining the chain of example2 once, and triggering it for every request (Pipeline)
+     * instead of building a new chain behind a new dummy each time
+     * see "--->"
+     */
+    public static void example5() {
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+
+        Function<LongIdBatch, List<User>> fetchUsers = ids -> ids.stream().mapToObj(User::new).toList();
+        Consumer<List<User>> logger = users -> System.out.println("Consumer - " + users + " - Running in thread: " + Thread.currentThread().getName());
+
+        // ---> the template: built once, the two stages are fused into one function
+        Pipeline<LongIdBatch, Void> template = Pipeline.<LongIdBatch>start()
+                .thenApply(fetchUsers)
+                .thenAccept(logger);
+
+        // ---> triggered for each request, like dummy.completeAsync() but with the ids of the request
+        for (long id = 1; id <= 3; id++) {
+            template.triggerAsync(LongIdBatch.of(id, id + 10), executorService).join();
+        }
+
+        // ---> a million requests: one dummy chain each, or one trigger each
+        Pipeline<LongIdBatch, Integer> counting = Pipeline.<LongIdBatch>start()
+                .thenApply(fetchUsers)
+                .thenApply(List::size);
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < 1_000_000; i++) {
+                LongIdBatch ids = LongIdBatch.of(i);
+                CompletableFuture<Void> dummy = new CompletableFuture<>();
+                CompletableFuture<Integer> count = dummy.thenApply(nil -> ids).thenApply(fetchUsers).thenApply(List::size);
+                dummy.complete(null);
+                count.join();
+            }
+            long chains = (System.nanoTime() - start) / 1_000_000;
+
+            start = System.nanoTime();
+            for (int i = 0; i < 1_000_000; i++) {
+                counting.trigger(LongIdBatch.of(i)).join();
+            }
+            System.out.println("dummy chains: " + chains + " ms, template: " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        }
+
+        executorService.shutdown();
+    }
+
     public static void main(String args[]) {
         //example1();
-        example2();
+        //example2();
+        //example3();
+        //example4();
+        example5();
     }
 
     private static void sleep(int timeout) {
@@ -1,14 +1,24 @@
 package org.example.m4;
 
+import com.sun.net.httpserver.HttpServer;
+import org.example.m4.http.StreamingFetcher;
+import org.example.m5.executor.ExecutorStrategy;
+
 import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class HttpClientExample {
     /**
@@ -68,7 +78,8 @@ public class HttpClientExample {
         // ---> Method: 3
         // ---> because you want to free those threads as soon as you get the response
         // by using executor, the rest of the chain will be run in executor's thread
-        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        // the kind of executor comes from -Dexecutor.strategy, e.g. "virtual" to run the rest of the chain on virtual threads
+        ExecutorService executorService = ExecutorStrategy.configured().create(1);
         future
                 .thenAcceptAsync(res -> {
                     var len = res.body().length();
@@ -89,7 +100,8 @@ public class HttpClientExample {
      */
     public static void example3() {
 
-        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        // the kind of executor comes from -Dexecutor.strategy
+        ExecutorService executorService = ExecutorStrategy.configured().create(1);
         HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
 
         HttpRequest request = HttpRequest.newBuilder()
@@ -127,10 +139,54 @@ public class HttpClientExample {
         executorService.shutdown();
     }
 
+    /**
+     * to demonstrate to share one client, cap the requests in flight and stream the bodies
+     * it runs against a local com.sun.net.httpserver stand-in, so it does not depend on the network
+     * see "--->"
+     */
+    public static void example4() throws IOException {
+        // ---> the stand-in: every page is 1 MB, and takes 50 ms to answer
+        byte[] page = new byte[1024 * 1024];
+        Arrays.fill(page, (byte) 'x');
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger peakInFlight = new AtomicInteger();
+
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/page", exchange -> {
+            peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            sleep(50);
+            exchange.sendResponseHeaders(200, page.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(page);
+            }
+            inFlight.decrementAndGet();
+        });
+        server.start();
+
+        URI uri = URI.create("http://localhost:" + server.getAddress().getPort() + "/page");
+
+        // ---> one client for all the requests, at most 8 of them in flight
+        try (StreamingFetcher fetcher = new StreamingFetcher(8)) {
+            List<CompletableFuture<Long>> lengths = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                // ---> the body is counted chunk by chunk, it is never held in memory as a whole
+                lengths.add(fetcher.countBytes(uri).thenApply(HttpResponse::body));
+            }
+
+            long total = lengths.stream().mapToLong(CompletableFuture::join).sum();
+            System.out.println("Fetched " + lengths.size() + " pages, " + total + " bytes"
+                    + ", at most " + peakInFlight.get() + " requests in flight");
+        } finally {
+            server.stop(0);
+        }
+    }
+
     public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
         //example1();
         //example2();
-        example3();
+        //example3();
+        example4();
     }
 
     private static void sleep(int timeout) {
@@ -0,0 +1,64 @@
+package org.example.m4.aggregate;
+
+import java.util.Collection;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * a {@link Fold} into a primitive double, without boxing the intermediate results
+ * the double is kept as its raw long bits, updated with compare-and-set
+ */
+public final class DoubleFold extends Fold<Double> {
+
+    private final AtomicLong accumulator;
+    private final DoubleBinaryOperator operator;
+
+    private DoubleFold(int size, double identity, DoubleBinaryOperator operator) {
+        super(size);
+        this.accumulator = new AtomicLong(Double.doubleToRawLongBits(identity));
+        this.operator = operator;
+    }
+
+    /**
+     * folds extractor(result) of every future into identity with the operator
+     * the operator must be associative and commutative, the results are folded in completion order
+     */
+    public static <T> DoubleFold of(Collection<? extends CompletionStage<? extends T>> futures,
+                                    ToDoubleFunction<? super T> extractor,
+                                    double identity, DoubleBinaryOperator operator) {
+        DoubleFold fold = new DoubleFold(futures.size(), identity, operator);
+        fold.subscribe(futures, value -> fold.accumulate(extractor.applyAsDouble(value)));
+        return fold;
+    }
+
+    public static <T> DoubleFold min(Collection<? extends CompletionStage<? extends T>> futures, ToDoubleFunction<? super T> extractor) {
+        return of(futures, extractor, Double.POSITIVE_INFINITY, Math::min);
+    }
+
+    public static <T> DoubleFold sum(Collection<? extends CompletionStage<? extends T>> futures, ToDoubleFunction<? super T> extractor) {
+        return of(futures, extractor, 0.0, Double::sum);
+    }
+
+    /**
+     * the aggregate of the results folded so far
+     */
+    public double current() {
+        return Double.longBitsToDouble(accumulator.get());
+    }
+
+    @Override
+    Double boxedValue() {
+        return current();
+    }
+
+    private void accumulate(double value) {
+        long current;
+        long next;
+        do {
+            current = accumulator.get();
+            next = Double.doubleToRawLongBits(operator.applyAsDouble(Double.longBitsToDouble(current), value));
+        } while (!accumulator.compareAndSet(current, next));
+    }
+}
@@ -0,0 +1,77 @@
+package org.example.m4.aggregate;
+
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * folds the results of many futures into one accumulator, each result the moment its future completes,
+ * instead of waiting for allOf() and then re-streaming the futures with join() (see AsyncExampleMultiTasks.example4)
+ * <p>
+ * The result is complete as soon as the last future lands, and the partial aggregate can be read at any time.
+ * The first failure completes the result exceptionally, without waiting for the others.
+ *
+ * <p>
+ * the common API of {@link IntFold}, {@link LongFold} and {@link DoubleFold}, which are the only implementations
+ *
+ * @param <R> the boxed type of the final value, only boxed once at the end
+ */
+public abstract sealed class Fold<R> permits IntFold, LongFold, DoubleFold {
+
+    private final CompletableFuture<R> result = new CompletableFuture<>();
+    private final int size;
+    private final AtomicInteger remaining;
+
+    Fold(int size) {
+        this.size = size;
+        this.remaining = new AtomicInteger(size);
+    }
+
+    /**
+     * completes with the final aggregate once every future has completed
+     * a copy per call: completing or cancelling it does not change the fold for the other callers
+     */
+    public CompletableFuture<R> result() {
+        return result.copy();
+    }
+
+    /**
+     * the number of results folded so far
+     */
+    public int completedCount() {
+        return size - remaining.get();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    abstract R boxedValue();
+
+    // called by the factories once the accumulator is initialized
+    <T> void subscribe(Collection<? extends CompletionStage<? extends T>> futures, Consumer<? super T> folder) {
+        if (futures.isEmpty()) {
+            result.complete(boxedValue());
+            return;
+        }
+        for (CompletionStage<? extends T> future : futures) {
+            future.whenComplete((value, exception) -> {
+                if (exception != null) {
+                    result.completeExceptionally(exception);
+                    return;
+                }
+                try {
+                    folder.accept(value);
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                    return;
+                }
+                if (remaining.decrementAndGet() == 0) {
+                    result.complete(boxedValue());
+                }
+            });
+        }
+    }
+}
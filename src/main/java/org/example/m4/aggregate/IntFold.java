@@ -0,0 +1,52 @@
+package org.example.m4.aggregate;
+
+import java.util.Collection;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntBinaryOperator;
+import java.util.function.ToIntFunction;
+
+/**
+ * a {@link Fold} into a primitive int, e.g. the minimum of example4, without boxing the intermediate results
+ */
+public final class IntFold extends Fold<Integer> {
+
+    private final AtomicInteger accumulator;
+
+    private IntFold(int size, int identity) {
+        super(size);
+        this.accumulator = new AtomicInteger(identity);
+    }
+
+    /**
+     * folds extractor(result) of every future into identity with the operator
+     * the operator must be associative and commutative, the results are folded in completion order
+     */
+    public static <T> IntFold of(Collection<? extends CompletionStage<? extends T>> futures,
+                                 ToIntFunction<? super T> extractor,
+                                 int identity, IntBinaryOperator operator) {
+        IntFold fold = new IntFold(futures.size(), identity);
+        fold.subscribe(futures, value -> fold.accumulator.accumulateAndGet(extractor.applyAsInt(value), operator));
+        return fold;
+    }
+
+    public static <T> IntFold min(Collection<? extends CompletionStage<? extends T>> futures, ToIntFunction<? super T> extractor) {
+        return of(futures, extractor, Integer.MAX_VALUE, Math::min);
+    }
+
+    public static <T> IntFold sum(Collection<? extends CompletionStage<? extends T>> futures, ToIntFunction<? super T> extractor) {
+        return of(futures, extractor, 0, Integer::sum);
+    }
+
+    /**
+     * the aggregate of the results folded so far
+     */
+    public int current() {
+        return accumulator.get();
+    }
+
+    @Override
+    Integer boxedValue() {
+        return accumulator.get();
+    }
+}
@@ -0,0 +1,52 @@
+package org.example.m4.aggregate;
+
+import java.util.Collection;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongBinaryOperator;
+import java.util.function.ToLongFunction;
+
+/**
+ * a {@link Fold} into a primitive long, e.g. the minimum of example4, without boxing the intermediate results
+ */
+public final class LongFold extends Fold<Long> {
+
+    private final AtomicLong accumulator;
+
+    private LongFold(int size, long identity) {
+        super(size);
+        this.accumulator = new AtomicLong(identity);
+    }
+
+    /**
+     * folds extractor(result) of every future into identity with the operator
+     * the operator must be associative and commutative, the results are folded in completion order
+     */
+    public static <T> LongFold of(Collection<? extends CompletionStage<? extends T>> futures,
+                                  ToLongFunction<? super T> extractor,
+                                  long identity, LongBinaryOperator operator) {
+        LongFold fold = new LongFold(futures.size(), identity);
+        fold.subscribe(futures, value -> fold.accumulator.accumulateAndGet(extractor.applyAsLong(value), operator));
+        return fold;
+    }
+
+    public static <T> LongFold min(Collection<? extends CompletionStage<? extends T>> futures, ToLongFunction<? super T> extractor) {
+        return of(futures, extractor, Long.MAX_VALUE, Math::min);
+    }
+
+    public static <T> LongFold sum(Collection<? extends CompletionStage<? extends T>> futures, ToLongFunction<? super T> extractor) {
+        return of(futures, extractor, 0, Long::sum);
+    }
+
+    /**
+     * the aggregate of the results folded so far
+     */
+    public long current() {
+        return accumulator.get();
+    }
+
+    @Override
+    Long boxedValue() {
+        return accumulator.get();
+    }
+}
@@ -0,0 +1,225 @@
+package org.example.m4.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongFunction;
+
+/**
+ * a size-bounded cache of CompletableFutures keyed by primitive long ids,
+ * in front of a fetch function such as fetchUser / fetchEmails in AsyncExampleMultiTasks
+ * <p>
+ * The future is cached as soon as the load starts, so concurrent misses for the same id share ONE load.
+ * A load that fails is discarded, so the next lookup retries it.
+ * The callers get copies of the cached future: cancelling one, or completing it, only changes that copy.
+ * <p>
+ * Eviction follows W-TinyLFU: new entries enter a small LRU window (1% of the capacity);
+ * an entry leaving the window only replaces the least recently used entry of the main area
+ * if a frequency sketch says it was accessed more often.
+ * This keeps popular ids cached even when a scan of one-off ids runs through the cache.
+ *
+ * @param <V> the type of the cached values, e.g. User or Email
+ */
+public class AsyncLoadingCache<V> {
+
+    private final LongFunction<CompletableFuture<V>> loader;
+    private final int windowMaximum;
+    private final int mainMaximum;
+
+    // everything below is guarded by "this"
+    private final LongKeyedMap<Node<V>> entries;
+    private final FrequencySketch sketch;
+    // head = least recently used, tail = most recently used
+    private final Node<V> window = Node.sentinel();
+    private final Node<V> main = Node.sentinel();
+    private int windowSize;
+    private int mainSize;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loadSuccesses = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder totalLoadNanos = new LongAdder();
+    private final AtomicLong maxLoadNanos = new AtomicLong();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param loader      starts the load of one id, e.g. a BatchLoader::load
+     * @param maximumSize the maximum number of cached entries, in-flight loads included
+     */
+    public AsyncLoadingCache(LongFunction<CompletableFuture<V>> loader, int maximumSize) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("maximumSize must be positive: " + maximumSize);
+        }
+        this.loader = loader;
+        this.windowMaximum = Math.max(1, maximumSize / 100);
+        this.mainMaximum = Math.max(0, maximumSize - windowMaximum);
+        this.entries = new LongKeyedMap<>(maximumSize);
+        this.sketch = new FrequencySketch(maximumSize);
+    }
+
+    /**
+     * returns a copy of the cached future of the id, or starts loading it
+     */
+    public CompletableFuture<V> get(long id) {
+        CompletableFuture<V> future;
+        synchronized (this) {
+            sketch.increment(id);
+            Node<V> node = entries.get(id);
+            if (node != null) {
+                node.unlink();
+                node.linkLast(node.inWindow ? window : main);
+                hits.increment();
+                return node.future.copy();
+            }
+            future = new CompletableFuture<>();
+            node = new Node<>(id, future);
+            entries.put(id, node);
+            node.inWindow = true;
+            node.linkLast(window);
+            windowSize++;
+            evict();
+        }
+        misses.increment();
+        // whatever completes the cached future exceptionally, it must not stay cached
+        CompletableFuture<V> cached = future;
+        cached.whenComplete((value, exception) -> {
+            if (exception != null) {
+                discard(id, cached);
+            }
+        });
+        load(id, future);
+        return future.copy();
+    }
+
+    /**
+     * returns a copy of the cached future of the id without loading it, or null
+     */
+    public synchronized CompletableFuture<V> getIfPresent(long id) {
+        Node<V> node = entries.get(id);
+        return node == null ? null : node.future.copy();
+    }
+
+    public synchronized void invalidate(long id) {
+        Node<V> node = entries.remove(id);
+        if (node != null) {
+            remove(node);
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public CacheStats stats() {
+        return new CacheStats(hits.sum(), misses.sum(),
+                loadSuccesses.sum(), loadFailures.sum(),
+                totalLoadNanos.sum(), maxLoadNanos.get(),
+                evictions.sum());
+    }
+
+    private void load(long id, CompletableFuture<V> future) {
+        long start = System.nanoTime();
+        CompletableFuture<V> loading;
+        try {
+            loading = loader.apply(id);
+        } catch (RuntimeException e) {
+            loading = CompletableFuture.failedFuture(e);
+        }
+        loading.whenComplete((value, exception) -> {
+            long elapsed = System.nanoTime() - start;
+            totalLoadNanos.add(elapsed);
+            maxLoadNanos.accumulateAndGet(elapsed, Math::max);
+            if (exception != null) {
+                loadFailures.increment();
+                future.completeExceptionally(exception);
+            } else {
+                loadSuccesses.increment();
+                future.complete(value);
+            }
+        });
+    }
+
+    // removes a failed load, unless the id has been reloaded in between
+    private synchronized void discard(long id, CompletableFuture<V> future) {
+        Node<V> node = entries.get(id);
+        if (node != null && node.future == future) {
+            entries.remove(id);
+            remove(node);
+        }
+    }
+
+    // must hold the lock
+    private void evict() {
+        while (windowSize > windowMaximum) {
+            // the least recently used entry of the window becomes a candidate for the main area
+            Node<V> candidate = window.next;
+            candidate.unlink();
+            windowSize--;
+            candidate.inWindow = false;
+            candidate.linkLast(main);
+            mainSize++;
+            if (mainSize <= mainMaximum) {
+                continue;
+            }
+            // the main area is full: keep whichever of the candidate and the main victim is more popular
+            Node<V> victim = main.next;
+            if (victim == candidate) {
+                evict(candidate);
+            } else if (sketch.frequency(candidate.id) > sketch.frequency(victim.id)) {
+                evict(victim);
+            } else {
+                evict(candidate);
+            }
+        }
+    }
+
+    private void evict(Node<V> node) {
+        entries.remove(node.id);
+        remove(node);
+        evictions.increment();
+    }
+
+    private void remove(Node<V> node) {
+        node.unlink();
+        if (node.inWindow) {
+            windowSize--;
+        } else {
+            mainSize--;
+        }
+    }
+
+    private static final class Node<V> {
+        final long id;
+        final CompletableFuture<V> future;
+        boolean inWindow;
+        Node<V> prev;
+        Node<V> next;
+
+        Node(long id, CompletableFuture<V> future) {
+            this.id = id;
+            this.future = future;
+        }
+
+        static <V> Node<V> sentinel() {
+            Node<V> sentinel = new Node<>(0, null);
+            sentinel.prev = sentinel;
+            sentinel.next = sentinel;
+            return sentinel;
+        }
+
+        void linkLast(Node<V> list) {
+            prev = list.prev;
+            next = list;
+            list.prev.next = this;
+            list.prev = this;
+        }
+
+        void unlink() {
+            prev.next = next;
+            next.prev = prev;
+            prev = null;
+            next = null;
+        }
+    }
+}
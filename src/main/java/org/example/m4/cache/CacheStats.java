@@ -0,0 +1,35 @@
+package org.example.m4.cache;
+
+/**
+ * a snapshot of the counters of an {@link AsyncLoadingCache}
+ *
+ * @param hitCount         lookups answered by a completed or in-flight future
+ * @param missCount        lookups that started a load
+ * @param loadSuccessCount loads that completed normally
+ * @param loadFailureCount loads that completed exceptionally, their entries are discarded
+ * @param totalLoadNanos   the time spent in all finished loads
+ * @param maxLoadNanos     the slowest finished load
+ * @param evictionCount    entries removed to respect the size bound
+ */
+public record CacheStats(long hitCount, long missCount,
+                         long loadSuccessCount, long loadFailureCount,
+                         long totalLoadNanos, long maxLoadNanos,
+                         long evictionCount) {
+
+    public long requestCount() {
+        return hitCount + missCount;
+    }
+
+    public double hitRate() {
+        long requests = requestCount();
+        return requests == 0 ? 1.0 : (double) hitCount / requests;
+    }
+
+    /**
+     * the average time of a load, in nanoseconds
+     */
+    public double averageLoadPenalty() {
+        long loads = loadSuccessCount + loadFailureCount;
+        return loads == 0 ? 0.0 : (double) totalLoadNanos / loads;
+    }
+}
@@ -0,0 +1,65 @@
+package org.example.m4.cache;
+
+/**
+ * a count-min sketch of 4-bit counters estimating how often a long id was accessed recently
+ * once the number of recorded accesses reaches the sample size, every counter is halved,
+ * so old popularity fades out (the "aging" of TinyLFU)
+ * not thread-safe: the owner guards it
+ */
+final class FrequencySketch {
+
+    private static final long[] SEEDS = {
+            0x97cb3127L, 0xab9b4b5fL, 0x7f4a7c15L, 0x2d3ff05bL
+    };
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private final long[] table;
+    private final int counterMask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(int maximumSize) {
+        int counters = Integer.highestOneBit(Math.max(16, maximumSize) - 1) << 1;
+        // 16 counters of 4 bits per long
+        table = new long[counters >>> 4];
+        counterMask = counters - 1;
+        sampleSize = 10 * Math.max(1, maximumSize);
+    }
+
+    void increment(long key) {
+        boolean added = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            int counter = counterOf(key, i);
+            int word = counter >>> 4;
+            int shift = (counter & 15) << 2;
+            if (((table[word] >>> shift) & 0xFL) != 0xFL) {
+                table[word] += 1L << shift;
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    int frequency(long key) {
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < SEEDS.length; i++) {
+            int counter = counterOf(key, i);
+            int count = (int) ((table[counter >>> 4] >>> ((counter & 15) << 2)) & 0xFL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions >>>= 1;
+    }
+
+    private int counterOf(long key, int depth) {
+        return (int) LongKeyedMap.mix(key + SEEDS[depth]) & counterMask;
+    }
+}
@@ -0,0 +1,247 @@
+package org.example.m4.cancel;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * a CompletableFuture whose cancellation reaches the work behind it
+ * <p>
+ * CompletableFuture.cancel() only completes the future with a CancellationException:
+ * the Supplier of supplyAsync() keeps running, and the stages it depends on keep running too.
+ * A CancellableFuture:
+ * <ul>
+ *     <li>interrupts the thread running the task of {@link #supplyAsync} / {@link #runAsync}
+ *     when cancelled with cancel(true), and never starts the task if it is cancelled while still queued</li>
+ *     <li>hands a {@link CancellationToken} to the tasks that prefer to check for cancellation cooperatively</li>
+ *     <li>propagates upstream: every stage created from it (thenApply, thenCompose, ...) is a CancellableFuture,
+ *     and once ALL the dependents of a stage are cancelled, the stage itself is cancelled,
+ *     so an abandoned chain is cancelled up to its source. The side-effect listeners of whenComplete() and
+ *     the copies of copy() do not count: they neither keep a stage alive, nor cancel it when cancelled</li>
+ *     <li>propagates into thenCompose: cancelling the composed stage also cancels the stage returned by the function</li>
+ *     <li>propagates downstream like any CompletableFuture: the dependents complete with a CancellationException</li>
+ * </ul>
+ * For two-source stages (thenCombine, acceptEither, ...), only the stage they are called on is linked.
+ * The static factories without a task (completedFuture, allOf, ...) are the ones of CompletableFuture,
+ * and return plain CompletableFutures.
+ */
+public class CancellableFuture<T> extends CompletableFuture<T> implements CancellationToken {
+
+    private final CancellableFuture<?> parent;
+    private final AtomicInteger liveDependents = new AtomicInteger();
+    // set before the count of a cancelled dependent is given back
+    private volatile boolean dependentCancelled;
+    // false for the listeners and copies, whose cancellation does not go upstream
+    private volatile boolean counted = true;
+    private final Object runnerLock = new Object();
+    // guarded by runnerLock: the thread running the task of supplyAsync / runAsync
+    private Thread runner;
+    private volatile Future<?> inner;
+
+    public CancellableFuture() {
+        this(null);
+    }
+
+    private CancellableFuture(CancellableFuture<?> parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * like CompletableFuture.supplyAsync(), but cancel(true) interrupts the supplier
+     */
+    public static <T> CancellableFuture<T> supplyAsync(Supplier<T> supplier, Executor executor) {
+        return supplyAsync(token -> supplier.get(), executor);
+    }
+
+    /**
+     * like CompletableFuture.supplyAsync(), the task gets the token to check for cancellation
+     */
+    public static <T> CancellableFuture<T> supplyAsync(Function<CancellationToken, T> task, Executor executor) {
+        CancellableFuture<T> future = new CancellableFuture<>();
+        executor.execute(() -> future.run(task));
+        return future;
+    }
+
+    /**
+     * like CompletableFuture.supplyAsync(), on the default executor (the common pool)
+     */
+    public static <T> CancellableFuture<T> supplyAsync(Supplier<T> supplier) {
+        CancellableFuture<T> future = new CancellableFuture<>();
+        future.defaultExecutor().execute(() -> future.run(token -> supplier.get()));
+        return future;
+    }
+
+    /**
+     * like CompletableFuture.runAsync(), on the default executor (the common pool)
+     */
+    public static CancellableFuture<Void> runAsync(Runnable runnable) {
+        return supplyAsync(() -> {
+            runnable.run();
+            return null;
+        });
+    }
+
+    /**
+     * like CompletableFuture.runAsync(), but cancel(true) interrupts the runnable
+     */
+    public static CancellableFuture<Void> runAsync(Runnable runnable, Executor executor) {
+        return supplyAsync(token -> {
+            runnable.run();
+            return null;
+        }, executor);
+    }
+
+    /**
+     * the cancellation token of this stage, true once this stage is cancelled
+     * (directly, or because all of its dependents were cancelled)
+     */
+    @Override
+    public boolean isCancellationRequested() {
+        return isCancelled();
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (!super.cancel(mayInterruptIfRunning)) {
+            return false;
+        }
+        if (mayInterruptIfRunning) {
+            synchronized (runnerLock) {
+                if (runner != null) {
+                    runner.interrupt();
+                }
+            }
+        }
+        Future<?> composed = inner;
+        if (composed != null) {
+            composed.cancel(mayInterruptIfRunning);
+        }
+        if (parent != null && counted) {
+            parent.dependentCancelled(mayInterruptIfRunning);
+        }
+        return true;
+    }
+
+    @Override
+    public <U> CompletableFuture<U> newIncompleteFuture() {
+        liveDependents.incrementAndGet();
+        return new CancellableFuture<>(this);
+    }
+
+    @Override
+    public CancellableFuture<T> whenComplete(BiConsumer<? super T, ? super Throwable> action) {
+        return uncounted(super.whenComplete(action));
+    }
+
+    @Override
+    public CancellableFuture<T> whenCompleteAsync(BiConsumer<? super T, ? super Throwable> action) {
+        return uncounted(super.whenCompleteAsync(action));
+    }
+
+    @Override
+    public CancellableFuture<T> whenCompleteAsync(BiConsumer<? super T, ? super Throwable> action, Executor executor) {
+        return uncounted(super.whenCompleteAsync(action, executor));
+    }
+
+    @Override
+    public CancellableFuture<T> copy() {
+        return uncounted(super.copy());
+    }
+
+    // a dependent which does not count among the live ones: taken out before anyone else can see it
+    private CancellableFuture<T> uncounted(CompletableFuture<T> dependent) {
+        CancellableFuture<T> listener = (CancellableFuture<T>) dependent;
+        listener.counted = false;
+        if (liveDependents.decrementAndGet() == 0 && dependentCancelled) {
+            // the counted dependents were all cancelled while this one was being created
+            cancel(false);
+        }
+        return listener;
+    }
+
+    @Override
+    public <U> CancellableFuture<U> thenCompose(Function<? super T, ? extends CompletionStage<U>> fn) {
+        return compose(fn, null);
+    }
+
+    @Override
+    public <U> CancellableFuture<U> thenComposeAsync(Function<? super T, ? extends CompletionStage<U>> fn) {
+        return compose(fn, defaultExecutor());
+    }
+
+    @Override
+    public <U> CancellableFuture<U> thenComposeAsync(Function<? super T, ? extends CompletionStage<U>> fn,
+                                                     Executor executor) {
+        return compose(fn, executor);
+    }
+
+    private <U> CancellableFuture<U> compose(Function<? super T, ? extends CompletionStage<U>> fn, Executor executor) {
+        // the function may run before super.thenCompose() returns the composed stage, or after:
+        // whichever of the two comes second links the inner stage to the composed one
+        AtomicReference<CancellableFuture<U>> composed = new AtomicReference<>();
+        AtomicReference<CompletionStage<U>> innerStage = new AtomicReference<>();
+        Function<T, CompletionStage<U>> tracking = value -> {
+            CompletionStage<U> stage = fn.apply(value);
+            innerStage.set(stage);
+            CancellableFuture<U> outer = composed.get();
+            if (outer != null) {
+                outer.attachInner(stage);
+            }
+            return stage;
+        };
+        CancellableFuture<U> outer = (CancellableFuture<U>) (executor == null
+                ? super.thenCompose(tracking)
+                : super.thenComposeAsync(tracking, executor));
+        composed.set(outer);
+        CompletionStage<U> stage = innerStage.get();
+        if (stage != null) {
+            outer.attachInner(stage);
+        }
+        return outer;
+    }
+
+    private void attachInner(CompletionStage<?> stage) {
+        Future<?> future = stage.toCompletableFuture();
+        inner = future;
+        // cancelled before the inner stage was known
+        if (isCancelled()) {
+            future.cancel(true);
+        }
+    }
+
+    private void dependentCancelled(boolean mayInterruptIfRunning) {
+        dependentCancelled = true;
+        if (liveDependents.decrementAndGet() == 0) {
+            cancel(mayInterruptIfRunning);
+        }
+    }
+
+    private void run(Function<CancellationToken, T> task) {
+        synchronized (runnerLock) {
+            // cancelled while queued: do not even start
+            if (isDone()) {
+                return;
+            }
+            runner = Thread.currentThread();
+        }
+        try {
+            complete(task.apply(this));
+        } catch (Throwable e) {
+            completeExceptionally(e);
+        } finally {
+            synchronized (runnerLock) {
+                runner = null;
+            }
+            // do not leak the interrupt of a cancel(true) into the next task of the pool thread
+            if (isCancelled()) {
+                Thread.interrupted();
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package org.example.m4.cancel;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * lets a long-running task check whether its result is still wanted,
+ * for the work that does not react to interrupts, e.g. a CPU-bound loop
+ */
+@FunctionalInterface
+public interface CancellationToken {
+
+    boolean isCancellationRequested();
+
+    /**
+     * to be called between two units of work
+     */
+    default void throwIfCancellationRequested() {
+        if (isCancellationRequested()) {
+            throw new CancellationException();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package org.example.m4.failure;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * cheap failures for the chains of CompletableFutures
+ * <p>
+ * when a supplier throws IllegalStateException("No data"), like in AsyncException, two stack traces are filled:
+ * the one of the exception, and the one of the CompletionException supplyAsync() wraps it in.
+ * Throwing {@link #wrap(Throwable)} of a {@link StacklessException} costs neither, and wrapping a {@link #preallocated(String)}
+ * failure only allocates the small wrapper.
+ * <p>
+ * the stages given to exceptionally() and handle() see the CompletionException, or not, depending on
+ * where the failure happened: {@link #recover(Function)} and {@link #handle(BiFunction)} always give them the cause.
+ */
+public final class Failures {
+
+    private Failures() {
+    }
+
+    /**
+     * the failure inside a CompletionException or an ExecutionException, the failure itself otherwise
+     */
+    public static Throwable unwrap(Throwable failure) {
+        Throwable current = failure;
+        while ((current instanceof CompletionException || current instanceof ExecutionException)
+                && current.getCause() != null) {
+            current = current.getCause();
+        }
+        return current;
+    }
+
+    /**
+     * a CompletionException of the failure, without a stack trace
+     * a CompletionException is returned as it is
+     */
+    public static CompletionException wrap(Throwable failure) {
+        return failure instanceof CompletionException completionException
+                ? completionException
+                : new StacklessCompletionException(failure);
+    }
+
+    /**
+     * a failure created once, to be thrown by every failing stage through {@link #wrap(Throwable)}, e.g.
+     * <pre>
+     *     private static final StacklessException NO_DATA = Failures.preallocated("No data");
+     *     ...
+     *     throw Failures.wrap(NO_DATA);
+     * </pre>
+     * it is immutable, so it can be shared by every request: no stack trace, no suppressed exceptions.
+     * A CompletionException cannot be made immutable, suppressed exceptions cannot be disabled on it,
+     * which is why each throw gets its own wrapper.
+     */
+    public static StacklessException preallocated(String message) {
+        return new StacklessException(message);
+    }
+
+    /**
+     * a future failed with the failure, which its dependents do not wrap again
+     */
+    public static <T> CompletableFuture<T> failedFuture(Throwable failure) {
+        return CompletableFuture.failedFuture(wrap(failure));
+    }
+
+    /**
+     * a function for exceptionally(), given the cause instead of its CompletionException
+     */
+    public static <T> Function<Throwable, T> recover(Function<? super Throwable, ? extends T> recovery) {
+        return failure -> recovery.apply(unwrap(failure));
+    }
+
+    /**
+     * a function for handle(), given the cause instead of its CompletionException
+     */
+    public static <T, R> BiFunction<T, Throwable, R> handle(BiFunction<? super T, ? super Throwable, ? extends R> handler) {
+        return (value, failure) -> handler.apply(value, failure == null ? null : unwrap(failure));
+    }
+}
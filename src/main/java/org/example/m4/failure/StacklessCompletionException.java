@@ -0,0 +1,41 @@
+package org.example.m4.failure;
+
+import java.util.Objects;
+import java.util.concurrent.CompletionException;
+
+/**
+ * a CompletionException without a stack trace
+ * a CompletableFuture does not wrap a CompletionException again, so a failure thrown or completed as one
+ * travels down the whole chain without another allocation
+ * <p>
+ * CompletionException has no constructor disabling the stack trace and the suppressed exceptions:
+ * the stack trace is neither filled nor writable here, the suppressed exceptions stay enabled,
+ * so an instance must not be shared between requests, see {@link Failures#preallocated(String)}
+ */
+final class StacklessCompletionException extends CompletionException {
+
+    private static final long serialVersionUID = 1L;
+
+    StacklessCompletionException(Throwable cause) {
+        super(null, cause);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+
+    // like a Throwable created with writableStackTrace = false: the argument is validated, then ignored
+    @Override
+    public void setStackTrace(StackTraceElement[] stackTrace) {
+        for (StackTraceElement element : stackTrace.clone()) {
+            Objects.requireNonNull(element, "stackTrace[i]");
+        }
+    }
+
+    // like CompletionException(Throwable), but only built when asked for
+    @Override
+    public String getMessage() {
+        return String.valueOf(getCause());
+    }
+}
@@ -0,0 +1,24 @@
+package org.example.m4.failure;
+
+/**
+ * a RuntimeException without a stack trace, and without suppressed exceptions
+ * <p>
+ * filling the stack trace is most of the cost of creating an exception: when a backend is down, every request
+ * fails, and the stack traces of the failures nobody prints cost more than the requests.
+ * Being immutable, one instance can be created once and thrown by every failing request, see
+ * {@link Failures#preallocated(String)}.
+ * <p>
+ * extend it for the failures that signal an expected condition, not a bug: a bug deserves its stack trace
+ */
+public class StacklessException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public StacklessException(String message) {
+        super(message, null, false, false);
+    }
+
+    public StacklessException(String message, Throwable cause) {
+        super(message, cause, false, false);
+    }
+}
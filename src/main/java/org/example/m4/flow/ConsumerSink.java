@@ -0,0 +1,73 @@
+package org.example.m4.flow;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.function.Consumer;
+
+/**
+ * the end of a Flow pipeline: hands each item to a consumer, and keeps "prefetch" items requested
+ * the result completes with the number of items consumed, or with the error of the pipeline
+ * a consumer throwing cancels the pipeline and fails the result,
+ * and completing the result from outside, e.g. cancel() or orTimeout(), cancels the pipeline too
+ */
+public class ConsumerSink<T> implements Flow.Subscriber<T> {
+
+    private final Consumer<? super T> consumer;
+    private final int prefetch;
+    private final CompletableFuture<Long> result = new CompletableFuture<>();
+    private Flow.Subscription subscription;
+    private long count;
+
+    public ConsumerSink(Consumer<? super T> consumer, int prefetch) {
+        if (prefetch < 1) {
+            throw new IllegalArgumentException("prefetch must be positive: " + prefetch);
+        }
+        this.consumer = consumer;
+        this.prefetch = prefetch;
+    }
+
+    /**
+     * completes when the pipeline completes, with the number of items consumed
+     * cancelling it cancels the subscription, the publisher stops producing
+     */
+    public CompletableFuture<Long> result() {
+        return result;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        // after onComplete() / onError() the cancellation is a no-op
+        result.whenComplete((count, exception) -> subscription.cancel());
+        if (!result.isDone()) {
+            subscription.request(prefetch);
+        }
+    }
+
+    @Override
+    public void onNext(T item) {
+        if (result.isDone()) {
+            // cancelled, the items already on their way are dropped
+            return;
+        }
+        try {
+            consumer.accept(item);
+        } catch (RuntimeException e) {
+            subscription.cancel();
+            result.completeExceptionally(e);
+            return;
+        }
+        count++;
+        subscription.request(1);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        result.completeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        result.complete(count);
+    }
+}
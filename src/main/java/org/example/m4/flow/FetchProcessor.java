@@ -0,0 +1,200 @@
+package org.example.m4.flow;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * maps every item to the result of an asynchronous fetch, with at most maxInFlight fetches at a time,
+ * and publishes the results in the order of the items
+ * <p>
+ * it requests an item from upstream only when a slot is free, and a slot is freed when its result is passed
+ * downstream: a slow subscriber slows the fetches and the publisher down, instead of filling the heap.
+ * At most maxInFlight items and results are held at any time.
+ * <p>
+ * a failed fetch cancels the upstream, and fails the downstream
+ * a single subscriber is supported
+ */
+public class FetchProcessor<T, R> implements Flow.Processor<T, R> {
+
+    private final Function<? super T, ? extends CompletableFuture<R>> fetch;
+    private final int maxInFlight;
+
+    // the fetches started, in the order of the items
+    private final Queue<CompletableFuture<R>> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicLong downstreamRequested = new AtomicLong();
+    private final AtomicInteger wip = new AtomicInteger();
+
+    private volatile Flow.Subscription upstream;
+    private volatile Flow.Subscriber<? super R> downstream;
+    private volatile boolean upstreamDone;
+    private volatile Throwable error;
+    private volatile boolean cancelled;
+
+    // only touched by the running drain()
+    private long requestedUpstream;
+    private long emitted;
+    private boolean done;
+
+    public FetchProcessor(Function<? super T, ? extends CompletableFuture<R>> fetch, int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be positive: " + maxInFlight);
+        }
+        this.fetch = fetch;
+        this.maxInFlight = maxInFlight;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super R> subscriber) {
+        if (downstream != null) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("FetchProcessor supports a single subscriber"));
+            return;
+        }
+        downstream = subscriber;
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    onError(new IllegalArgumentException("non-positive request: " + n));
+                    return;
+                }
+                downstreamRequested.accumulateAndGet(n, (current, added) -> {
+                    long sum = current + added;
+                    return sum < 0 ? Long.MAX_VALUE : sum;
+                });
+                drain();
+            }
+
+            @Override
+            public void cancel() {
+                cancelled = true;
+                drain();
+            }
+        });
+        drain();
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (upstream != null) {
+            subscription.cancel();
+            return;
+        }
+        upstream = subscription;
+        drain();
+    }
+
+    @Override
+    public void onNext(T item) {
+        CompletableFuture<R> result;
+        try {
+            result = fetch.apply(item);
+        } catch (RuntimeException e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+        pending.add(result);
+        result.whenComplete((value, exception) -> drain());
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        error = throwable;
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        upstreamDone = true;
+        drain();
+    }
+
+    /**
+     * the number of fetches started and not passed downstream yet
+     */
+    public int inFlight() {
+        return pending.size();
+    }
+
+    // all the signals go through here, run by one thread at a time
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            Flow.Subscriber<? super R> subscriber = downstream;
+            Flow.Subscription subscription = upstream;
+            if (!done && subscriber != null && subscription != null) {
+                step(subscriber, subscription);
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void step(Flow.Subscriber<? super R> subscriber, Flow.Subscription subscription) {
+        if (cancelled) {
+            done = true;
+            subscription.cancel();
+            cancelPending();
+            return;
+        }
+        // the results in order, as long as the head is completed and the subscriber asks for more
+        long demand = downstreamRequested.get();
+        long delivered = 0;
+        CompletableFuture<R> head;
+        while (!cancelled && delivered != demand && (head = pending.peek()) != null && head.isDone()) {
+            pending.poll();
+            if (head.isCompletedExceptionally()) {
+                Throwable failure = head.handle((value, exception) -> exception).join();
+                done = true;
+                subscription.cancel();
+                cancelPending();
+                subscriber.onError(failure);
+                return;
+            }
+            subscriber.onNext(head.join());
+            delivered++;
+            emitted++;
+        }
+        if (delivered != 0 && demand != Long.MAX_VALUE) {
+            downstreamRequested.addAndGet(-delivered);
+        }
+        if (error != null) {
+            done = true;
+            cancelPending();
+            subscriber.onError(error);
+            return;
+        }
+        if (upstreamDone && pending.isEmpty()) {
+            done = true;
+            subscriber.onComplete();
+            return;
+        }
+        // the free slots: the items requested and not passed downstream yet hold one each
+        long free = maxInFlight - (requestedUpstream - emitted);
+        if (free > 0 && !upstreamDone) {
+            requestedUpstream += free;
+            subscription.request(free);
+        }
+    }
+
+    private void cancelPending() {
+        CompletableFuture<R> future;
+        while ((future = pending.poll()) != null) {
+            future.cancel(true);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package org.example.m4.flow;
+
+import org.example.m4.model.LongIdBatch;
+
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
+/**
+ * publishes ids in chunks, one LongIdBatch per onNext, and only as many chunks as the subscriber requested
+ * the chunks are created when they are requested: a range of ten million ids is never held in memory at once
+ * <p>
+ * cold: every subscriber gets all the chunks, from the first one
+ */
+public class IdChunkPublisher implements Flow.Publisher<LongIdBatch> {
+
+    private final long chunkCount;
+    private final LongFunction<LongIdBatch> chunkAt;
+    private final Executor executor;
+
+    private IdChunkPublisher(long chunkCount, LongFunction<LongIdBatch> chunkAt, Executor executor) {
+        this.chunkCount = chunkCount;
+        this.chunkAt = chunkAt;
+        this.executor = Objects.requireNonNull(executor);
+    }
+
+    /**
+     * the ids from (inclusive) to (exclusive), chunkSize at a time, signalled on the executor
+     */
+    public static IdChunkPublisher range(long from, long to, int chunkSize, Executor executor) {
+        checkChunkSize(chunkSize);
+        long count = Math.max(0, to - from);
+        return new IdChunkPublisher((count + chunkSize - 1) / chunkSize,
+                chunk -> {
+                    long start = from + chunk * chunkSize;
+                    return LongIdBatch.range(start, Math.min(to, start + chunkSize));
+                },
+                executor);
+    }
+
+    /**
+     * the ids of the batch, as slices of chunkSize ids (views, not copies)
+     */
+    public static IdChunkPublisher of(LongIdBatch ids, int chunkSize, Executor executor) {
+        checkChunkSize(chunkSize);
+        return new IdChunkPublisher((ids.size() + chunkSize - 1) / chunkSize,
+                chunk -> {
+                    int start = (int) chunk * chunkSize;
+                    return ids.slice(start, Math.min(ids.size(), start + chunkSize));
+                },
+                executor);
+    }
+
+    public long chunkCount() {
+        return chunkCount;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super LongIdBatch> subscriber) {
+        ChunkSubscription subscription = new ChunkSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        // signals the completion of an empty publisher without waiting for a request
+        subscription.schedule();
+    }
+
+    private static void checkChunkSize(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        }
+    }
+
+    private final class ChunkSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super LongIdBatch> subscriber;
+        private final AtomicLong requested = new AtomicLong();
+        // the number of drain() calls asked for: only the one which raised it from 0 runs, the others loop it again
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile Throwable invalidRequest;
+        // only touched by the running drain()
+        private long next;
+        private boolean done;
+
+        ChunkSubscription(Flow.Subscriber<? super LongIdBatch> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("non-positive request: " + n);
+            } else {
+                requested.accumulateAndGet(n, (current, added) -> {
+                    long sum = current + added;
+                    // capped at Long.MAX_VALUE, which means unbounded
+                    return sum < 0 ? Long.MAX_VALUE : sum;
+                });
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        void schedule() {
+            if (wip.getAndIncrement() == 0) {
+                executor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+            do {
+                if (done || cancelled) {
+                    return;
+                }
+                if (invalidRequest != null) {
+                    done = true;
+                    subscriber.onError(invalidRequest);
+                    return;
+                }
+                long demand = requested.get();
+                long emitted = 0;
+                while (emitted != demand && next < chunkCount) {
+                    if (cancelled) {
+                        return;
+                    }
+                    subscriber.onNext(chunkAt.apply(next++));
+                    emitted++;
+                }
+                if (next == chunkCount && !cancelled) {
+                    done = true;
+                    subscriber.onComplete();
+                    return;
+                }
+                if (emitted != 0 && demand != Long.MAX_VALUE) {
+                    requested.addAndGet(-emitted);
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package org.example.m4.http;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * a semaphore for asynchronous tasks: at most "permits" tasks are in flight,
+ * the others wait in a queue without blocking any thread
+ * a permit is released when the stage returned by the task completes, not when the task returns
+ * <p>
+ * the waiting tasks are started by a loop, not by recursion: a task whose stage is already complete
+ * releases its permit while the loop is still running, and the loop picks the next one up,
+ * so a long queue of fast tasks does not grow the stack
+ */
+public class AsyncLimiter {
+
+    private final int maxPermits;
+    private final AtomicInteger permits;
+    private final Queue<Runnable> waiters = new ConcurrentLinkedQueue<>();
+    // the number of drain() calls not handled yet, only the thread bringing it from 0 runs the loop
+    private final AtomicInteger wip = new AtomicInteger();
+
+    public AsyncLimiter(int permits) {
+        if (permits < 1) {
+            throw new IllegalArgumentException("permits must be positive: " + permits);
+        }
+        this.maxPermits = permits;
+        this.permits = new AtomicInteger(permits);
+    }
+
+    /**
+     * starts the task now if a permit is free, otherwise as soon as one is released
+     * a task whose future is completed while it waits, e.g. cancelled, is dropped without being started
+     */
+    public <T> CompletableFuture<T> submit(Supplier<? extends CompletionStage<T>> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        waiters.add(() -> run(task, result));
+        drain();
+        return result;
+    }
+
+    /**
+     * the number of tasks started and not completed yet
+     */
+    public int inFlight() {
+        return maxPermits - permits.get();
+    }
+
+    /**
+     * the number of tasks waiting for a permit
+     */
+    public int queued() {
+        return waiters.size();
+    }
+
+    private <T> void run(Supplier<? extends CompletionStage<T>> task, CompletableFuture<T> result) {
+        if (result.isDone()) {
+            // called from the loop of drain(), which goes on with the permit given back
+            permits.incrementAndGet();
+            return;
+        }
+        CompletionStage<T> stage;
+        try {
+            stage = task.get();
+        } catch (RuntimeException e) {
+            release();
+            result.completeExceptionally(e);
+            return;
+        }
+        stage.whenComplete((value, exception) -> {
+            release();
+            if (exception != null) {
+                result.completeExceptionally(exception);
+            } else {
+                result.complete(value);
+            }
+        });
+    }
+
+    private void release() {
+        permits.incrementAndGet();
+        drain();
+    }
+
+    // starts waiting tasks while there are permits left
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            // the thread in the loop, maybe this one further up the stack, will check again
+            return;
+        }
+        int missed = 1;
+        do {
+            while (!waiters.isEmpty() && tryAcquire()) {
+                Runnable waiter = waiters.poll();
+                if (waiter == null) {
+                    permits.incrementAndGet();
+                } else {
+                    waiter.run();
+                }
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private boolean tryAcquire() {
+        int available;
+        do {
+            available = permits.get();
+            if (available == 0) {
+                return false;
+            }
+        } while (!permits.compareAndSet(available, available - 1));
+        return true;
+    }
+}
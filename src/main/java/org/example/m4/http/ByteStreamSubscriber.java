@@ -0,0 +1,62 @@
+package org.example.m4.http;
+
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.function.Consumer;
+
+/**
+ * a body subscriber handing each chunk of the body to a consumer as it arrives, and counting the bytes,
+ * instead of buffering the whole page like BodyHandlers.ofString()
+ * it requests one chunk at a time, so a slow consumer slows the download down instead of filling the heap
+ */
+class ByteStreamSubscriber implements HttpResponse.BodySubscriber<Long> {
+
+    private final Consumer<ByteBuffer> chunkConsumer;
+    private final CompletableFuture<Long> body = new CompletableFuture<>();
+    private Flow.Subscription subscription;
+    private long count;
+
+    ByteStreamSubscriber(Consumer<ByteBuffer> chunkConsumer) {
+        this.chunkConsumer = chunkConsumer;
+    }
+
+    @Override
+    public CompletionStage<Long> getBody() {
+        return body;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(1);
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> chunks) {
+        try {
+            for (ByteBuffer chunk : chunks) {
+                count += chunk.remaining();
+                chunkConsumer.accept(chunk);
+            }
+        } catch (RuntimeException e) {
+            subscription.cancel();
+            body.completeExceptionally(e);
+            return;
+        }
+        subscription.request(1);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        body.completeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        body.complete(count);
+    }
+}
@@ -0,0 +1,75 @@
+package org.example.m4.http;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * a reusable HTTP fetcher, unlike HttpClientExample which builds a new HttpClient per call
+ * <ul>
+ *     <li>one shared HttpClient, asking for HTTP/2 so that requests to the same host are multiplexed
+ *     over one connection (it falls back to HTTP/1.1 when the server does not support it)</li>
+ *     <li>at most "maxInFlight" requests are sent at the same time, the others wait in an {@link AsyncLimiter}</li>
+ *     <li>bodies are streamed chunk by chunk, never materialized as a String</li>
+ * </ul>
+ */
+public class StreamingFetcher implements AutoCloseable {
+
+    private final HttpClient client;
+    private final AsyncLimiter limiter;
+
+    public StreamingFetcher(int maxInFlight) {
+        this(HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build(), maxInFlight);
+    }
+
+    /**
+     * @param client shared by every request, e.g. one configured with its own executor
+     */
+    public StreamingFetcher(HttpClient client, int maxInFlight) {
+        this.client = client;
+        this.limiter = new AsyncLimiter(maxInFlight);
+    }
+
+    /**
+     * sends the request once a slot is free
+     * the slot is held until the body has been fully consumed by the handler
+     */
+    public <T> CompletableFuture<HttpResponse<T>> send(HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+        return limiter.submit(() -> client.sendAsync(request, handler));
+    }
+
+    /**
+     * GETs the uri and counts the bytes of its body, without keeping them
+     */
+    public CompletableFuture<HttpResponse<Long>> countBytes(URI uri) {
+        return stream(uri, chunk -> {
+        });
+    }
+
+    /**
+     * GETs the uri and hands each chunk of its body to the consumer as it arrives
+     * the chunks must not be kept, the response body is the total number of bytes
+     */
+    public CompletableFuture<HttpResponse<Long>> stream(URI uri, Consumer<ByteBuffer> chunkConsumer) {
+        HttpRequest request = HttpRequest.newBuilder().GET().uri(uri).build();
+        return send(request, responseInfo -> new ByteStreamSubscriber(chunkConsumer));
+    }
+
+    public AsyncLimiter limiter() {
+        return limiter;
+    }
+
+    @Override
+    public void close() {
+        client.close();
+    }
+}
@@ -0,0 +1,273 @@
+package org.example.m4.join;
+
+import org.example.m4.cache.LongKeyedMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * joins two streams of chunks by a long key, e.g. the users and the emails by id, as the chunks arrive
+ * <p>
+ * thenAcceptBoth() in AsyncExampleMultiTasks.example1 waits for both full lists; matching them by looking up
+ * one list for every element of the other is O(n*m). Here each side keeps a primitive long-keyed hash table of
+ * its rows not matched yet, and every chunk probes the table of the other side:
+ * <ul>
+ *     <li>a match is passed downstream right away, and the matched row is removed from the table</li>
+ *     <li>once a side is complete, its table is the build side: the other side only probes it,
+ *     and the rows it had stored, which can no longer match, are dropped</li>
+ * </ul>
+ * the keys are unique on each side. The rows of a chunk may be stored: they must not be flyweights,
+ * e.g. the rows handed out by ColumnBatch.forEachFlyweight(); a ColumnBatch as an Iterable is fine.
+ * <p>
+ * the chunks can arrive on any thread. The matches are found under the lock of the tables, but passed downstream
+ * after it is released, by one thread at a time: while the consumer runs, the matches of the other chunks are queued
+ * and passed on by the thread already in the consumer, so a slow consumer does not hold the tables.
+ * If the consumer throws, the join fails: the tables are cleared, and the later chunks are ignored.
+ */
+public class StreamingHashJoin<L, R, O> {
+
+    private final ToLongFunction<? super L> leftKey;
+    private final ToLongFunction<? super R> rightKey;
+    private final BiFunction<? super L, ? super R, ? extends O> combiner;
+    private final Consumer<? super O> downstream;
+    private final CompletableFuture<Long> result = new CompletableFuture<>();
+
+    private final Object lock = new Object();
+    // guarded by lock: the rows of each side not matched yet
+    private final LongKeyedMap<L> leftRows = new LongKeyedMap<>(1024);
+    private final LongKeyedMap<R> rightRows = new LongKeyedMap<>(1024);
+    private boolean leftDone;
+    private boolean rightDone;
+
+    // the matches of a chunk, added under lock, passed downstream by drain()
+    private final Queue<List<Match<L, R>>> matches = new ConcurrentLinkedQueue<>();
+    // the number of drain() calls not handled yet, only the thread bringing it from 0 runs the loop
+    private final AtomicInteger wip = new AtomicInteger();
+    // set under lock, after the last matches are queued
+    private volatile boolean bothDone;
+    // only used by the thread in the loop of drain()
+    private long emitted;
+
+    public StreamingHashJoin(ToLongFunction<? super L> leftKey, ToLongFunction<? super R> rightKey,
+                             BiFunction<? super L, ? super R, ? extends O> combiner, Consumer<? super O> downstream) {
+        this.leftKey = leftKey;
+        this.rightKey = rightKey;
+        this.combiner = combiner;
+        this.downstream = downstream;
+    }
+
+    /**
+     * completes with the number of pairs passed downstream once both sides are complete,
+     * or with the first failure of a side or of the downstream consumer
+     * a copy per call: completing or cancelling it does not change the join for the other callers
+     */
+    public CompletableFuture<Long> result() {
+        return result.copy();
+    }
+
+    public void acceptLeft(Iterable<? extends L> chunk) {
+        synchronized (lock) {
+            if (result.isDone()) {
+                return;
+            }
+            List<Match<L, R>> found = new ArrayList<>();
+            try {
+                for (L left : chunk) {
+                    long key = leftKey.applyAsLong(left);
+                    R right = rightRows.remove(key);
+                    if (right != null) {
+                        found.add(new Match<>(left, right));
+                    } else if (!rightDone) {
+                        leftRows.put(key, left);
+                    }
+                }
+            } catch (RuntimeException e) {
+                fail(e);
+                return;
+            }
+            if (!found.isEmpty()) {
+                matches.add(found);
+            }
+        }
+        drain();
+    }
+
+    public void acceptRight(Iterable<? extends R> chunk) {
+        synchronized (lock) {
+            if (result.isDone()) {
+                return;
+            }
+            List<Match<L, R>> found = new ArrayList<>();
+            try {
+                for (R right : chunk) {
+                    long key = rightKey.applyAsLong(right);
+                    L left = leftRows.remove(key);
+                    if (left != null) {
+                        found.add(new Match<>(left, right));
+                    } else if (!leftDone) {
+                        rightRows.put(key, right);
+                    }
+                }
+            } catch (RuntimeException e) {
+                fail(e);
+                return;
+            }
+            if (!found.isEmpty()) {
+                matches.add(found);
+            }
+        }
+        drain();
+    }
+
+    public void completeLeft() {
+        synchronized (lock) {
+            leftDone = true;
+            // no left row can come for them anymore
+            rightRows.clear();
+            bothDone = rightDone;
+        }
+        drain();
+    }
+
+    public void completeRight() {
+        synchronized (lock) {
+            rightDone = true;
+            leftRows.clear();
+            bothDone = leftDone;
+        }
+        drain();
+    }
+
+    public void fail(Throwable failure) {
+        synchronized (lock) {
+            leftRows.clear();
+            rightRows.clear();
+            result.completeExceptionally(failure);
+        }
+        matches.clear();
+    }
+
+    /**
+     * feeds the left side with a stage completing with all its rows at once
+     */
+    public void left(CompletionStage<? extends Iterable<? extends L>> rows) {
+        rows.whenComplete((chunk, exception) -> {
+            if (exception != null) {
+                fail(exception);
+            } else {
+                acceptLeft(chunk);
+                completeLeft();
+            }
+        });
+    }
+
+    /**
+     * feeds the right side with a stage completing with all its rows at once
+     */
+    public void right(CompletionStage<? extends Iterable<? extends R>> rows) {
+        rows.whenComplete((chunk, exception) -> {
+            if (exception != null) {
+                fail(exception);
+            } else {
+                acceptRight(chunk);
+                completeRight();
+            }
+        });
+    }
+
+    /**
+     * a subscriber feeding the left side with a publisher of chunks, one chunk requested at a time
+     */
+    public Flow.Subscriber<Iterable<? extends L>> leftSubscriber() {
+        return new ChunkSubscriber<L>(this::acceptLeft, this::completeLeft);
+    }
+
+    /**
+     * a subscriber feeding the right side with a publisher of chunks, one chunk requested at a time
+     */
+    public Flow.Subscriber<Iterable<? extends R>> rightSubscriber() {
+        return new ChunkSubscriber<R>(this::acceptRight, this::completeRight);
+    }
+
+    // passes the queued matches downstream, and completes the join once both sides are done and nothing is left
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            // the thread in the loop, maybe this one further up the stack, will check again
+            return;
+        }
+        int missed = 1;
+        do {
+            List<Match<L, R>> found;
+            while ((found = matches.poll()) != null) {
+                if (!result.isDone()) {
+                    emit(found);
+                }
+            }
+            // bothDone first: the matches queued before it are seen by isEmpty()
+            if (bothDone && matches.isEmpty()) {
+                result.complete(emitted);
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void emit(List<Match<L, R>> found) {
+        try {
+            for (Match<L, R> match : found) {
+                downstream.accept(combiner.apply(match.left(), match.right()));
+                emitted++;
+            }
+        } catch (RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    private record Match<L, R>(L left, R right) {
+    }
+
+    private final class ChunkSubscriber<T> implements Flow.Subscriber<Iterable<? extends T>> {
+        private final Consumer<Iterable<? extends T>> onChunk;
+        private final Runnable onDone;
+        private Flow.Subscription subscription;
+
+        ChunkSubscriber(Consumer<Iterable<? extends T>> onChunk, Runnable onDone) {
+            this.onChunk = onChunk;
+            this.onDone = onDone;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(Iterable<? extends T> chunk) {
+            onChunk.accept(chunk);
+            if (result.isDone()) {
+                subscription.cancel();
+            } else {
+                subscription.request(1);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            fail(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            onDone.run();
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package org.example.m4.loader;
+
+import org.example.m4.cache.LongKeyedMap;
+import org.example.m4.model.LongIdBatch;
+import org.example.m4.timer.HashedWheelTimer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * DataLoader-style batching in front of a bulk fetch function such as fetchUser / fetchEmails
+ * in AsyncExampleMultiTasks.
+ * <p>
+ * Every {@link #load(long)} made within the batch window is collected, the ids are de-duplicated,
+ * and the batch is sent as ONE call to the bulk function, either when the window elapses
+ * or as soon as the batch reaches its maximum size.
+ * The bulk function must return the values in the same order as the ids it was given.
+ *
+ * @param <V> the type of the fetched values, e.g. User or Email
+ */
+public class BatchLoader<V> {
+
+    private final Function<LongIdBatch, CompletableFuture<List<V>>> batchFunction;
+    private final int maxBatchSize;
+    private final Executor windowExecutor;
+
+    private final Object lock = new Object();
+    // guarded by lock: the requests of the batch currently being collected
+    private Batch<V> pending = new Batch<>();
+    // guarded by lock: the generation of the current batch, used to ignore stale window timers
+    private long generation;
+
+    private final AtomicLong batchCalls = new AtomicLong();
+    private final AtomicLong loadCalls = new AtomicLong();
+
+    /**
+     * @param batchFunction the bulk fetch, returning one value per id, in the same order
+     * @param maxBatchSize  the batch is dispatched immediately once it holds this many distinct ids
+     * @param windowMillis  how long the first request of a batch waits for others to join it
+     */
+    public BatchLoader(Function<LongIdBatch, CompletableFuture<List<V>>> batchFunction,
+                       int maxBatchSize, long windowMillis) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be positive: " + maxBatchSize);
+        }
+        if (windowMillis < 0) {
+            throw new IllegalArgumentException("windowMillis must not be negative: " + windowMillis);
+        }
+        this.batchFunction = batchFunction;
+        this.maxBatchSize = maxBatchSize;
+        this.windowExecutor = HashedWheelTimer.shared().delayedExecutor(windowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * requests a single id, the returned future completes once the batch holding it is fetched
+     * concurrent requests for the same id within one batch share the same fetch,
+     * each one gets a copy of its future: cancelling or completing it does not change the others
+     */
+    public CompletableFuture<V> load(long id) {
+        loadCalls.incrementAndGet();
+        Batch<V> full = null;
+        CompletableFuture<V> future;
+        synchronized (lock) {
+            future = pending.get(id);
+            if (future != null) {
+                return future.copy();
+            }
+            future = new CompletableFuture<>();
+            pending.add(id, future);
+            if (pending.size() == 1) {
+                // the first request of a batch opens the window
+                long scheduled = generation;
+                windowExecutor.execute(() -> dispatch(scheduled));
+            }
+            if (pending.size() >= maxBatchSize) {
+                full = takePending();
+            }
+        }
+        if (full != null) {
+            send(full);
+        }
+        return future.copy();
+    }
+
+    /**
+     * requests several ids, the values come back in the same order as the ids
+     */
+    public CompletableFuture<List<V>> loadMany(LongIdBatch ids) {
+        List<CompletableFuture<V>> futures = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            futures.add(load(ids.get(i)));
+        }
+        return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new))
+                .thenApply(nil -> futures.stream().map(CompletableFuture::join).toList());
+    }
+
+    /**
+     * sends the batch being collected right now, without waiting for the window to elapse
+     */
+    public void dispatch() {
+        Batch<V> batch;
+        synchronized (lock) {
+            batch = takePending();
+        }
+        send(batch);
+    }
+
+    /**
+     * the number of calls made to the bulk function so far
+     */
+    public long batchCalls() {
+        return batchCalls.get();
+    }
+
+    /**
+     * the number of individual ids requested so far, duplicates included
+     */
+    public long loadCalls() {
+        return loadCalls.get();
+    }
+
+    private void dispatch(long scheduled) {
+        Batch<V> batch;
+        synchronized (lock) {
+            // the batch this timer was opened for has already been sent because it was full
+            if (scheduled != generation) {
+                return;
+            }
+            batch = takePending();
+        }
+        send(batch);
+    }
+
+    // must hold lock
+    private Batch<V> takePending() {
+        Batch<V> batch = pending;
+        pending = new Batch<>();
+        generation++;
+        return batch;
+    }
+
+    private void send(Batch<V> batch) {
+        if (batch.size() == 0) {
+            return;
+        }
+        batchCalls.incrementAndGet();
+        LongIdBatch ids = batch.ids();
+        CompletableFuture<List<V>> result;
+        try {
+            result = batchFunction.apply(ids);
+        } catch (RuntimeException e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+        result.whenComplete((values, exception) -> {
+            if (exception == null && values.size() != ids.size()) {
+                exception = new IllegalStateException(
+                        "Bulk fetch returned " + values.size() + " values for " + ids.size() + " ids");
+            }
+            if (exception != null) {
+                for (CompletableFuture<V> future : batch.futures) {
+                    future.completeExceptionally(exception);
+                }
+                return;
+            }
+            int i = 0;
+            for (CompletableFuture<V> future : batch.futures) {
+                future.complete(values.get(i++));
+            }
+        });
+    }
+
+    /**
+     * the distinct ids of a batch in the order of their first request, without boxing them
+     */
+    private static final class Batch<V> {
+        private final LongKeyedMap<CompletableFuture<V>> byId = new LongKeyedMap<>(16);
+        private final List<CompletableFuture<V>> futures = new ArrayList<>();
+        private long[] ids = new long[16];
+
+        int size() {
+            return futures.size();
+        }
+
+        CompletableFuture<V> get(long id) {
+            return byId.get(id);
+        }
+
+        void add(long id, CompletableFuture<V> future) {
+            int size = futures.size();
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size] = id;
+            futures.add(future);
+            byId.put(id, future);
+        }
+
+        LongIdBatch ids() {
+            return LongIdBatch.wrap(Arrays.copyOf(ids, futures.size()));
+        }
+    }
+}
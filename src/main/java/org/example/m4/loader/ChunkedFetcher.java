@@ -0,0 +1,114 @@
+package org.example.m4.loader;
+
+import org.example.m4.http.AsyncLimiter;
+import org.example.m4.model.LongIdBatch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+
+/**
+ * the opposite of {@link BatchLoader}: splits ONE large request into chunks fetched in parallel
+ * <p>
+ * fetchUser in AsyncExampleMultiTasks.example1 maps the whole id list in one supplyAsync(), on one thread.
+ * Here the ids are sliced into chunks of chunkSize (views, not copies), at most maxConcurrency chunks are
+ * fetched at the same time, and the results are put back together in the order of the ids.
+ * <p>
+ * the cap is shared by all the requests of this fetcher, so one large request cannot take the whole executor.
+ * The first failing chunk fails the request, and its chunks not started yet are skipped.
+ *
+ * @param <V> the type of the fetched values, e.g. User or Email
+ */
+public class ChunkedFetcher<V> {
+
+    private final Function<LongIdBatch, ? extends CompletableFuture<List<V>>> chunkFunction;
+    private final int chunkSize;
+    private final AsyncLimiter limiter;
+
+    /**
+     * @param chunkFunction  fetches a chunk, and returns the values in the same order as the ids
+     * @param chunkSize      the most ids in a chunk
+     * @param maxConcurrency the most chunks fetched at the same time
+     */
+    public ChunkedFetcher(Function<LongIdBatch, ? extends CompletableFuture<List<V>>> chunkFunction,
+                          int chunkSize, int maxConcurrency) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        }
+        this.chunkFunction = chunkFunction;
+        this.chunkSize = chunkSize;
+        this.limiter = new AsyncLimiter(maxConcurrency);
+    }
+
+    /**
+     * maps each chunk on the executor, e.g. ChunkedFetcher.mapping(User::new, 10_000, 8, executor)
+     */
+    public static <V> ChunkedFetcher<V> mapping(LongFunction<? extends V> mapper, int chunkSize, int maxConcurrency,
+                                                Executor executor) {
+        return new ChunkedFetcher<>(chunk -> CompletableFuture.supplyAsync(() -> chunk.mapToObj(mapper), executor),
+                chunkSize, maxConcurrency);
+    }
+
+    public CompletableFuture<List<V>> fetch(LongIdBatch ids) {
+        int chunkCount = (ids.size() + chunkSize - 1) / chunkSize;
+        if (chunkCount <= 1) {
+            return limiter.submit(() -> chunkFunction.apply(ids));
+        }
+        CompletableFuture<List<V>> result = new CompletableFuture<>();
+        AtomicReferenceArray<List<V>> values = new AtomicReferenceArray<>(chunkCount);
+        AtomicInteger remaining = new AtomicInteger(chunkCount);
+        List<CompletableFuture<List<V>>> chunks = new ArrayList<>(chunkCount);
+        for (int i = 0; i < chunkCount && !result.isDone(); i++) {
+            int index = i;
+            LongIdBatch chunk = ids.slice(i * chunkSize, Math.min(ids.size(), (i + 1) * chunkSize));
+            CompletableFuture<List<V>> fetched = limiter.submit(() -> fetchChunk(chunk, result));
+            fetched.thenAccept(chunkValues -> {
+                values.set(index, chunkValues);
+                if (remaining.decrementAndGet() == 0) {
+                    // in the order of the chunks, whatever the order they completed in
+                    List<V> all = new ArrayList<>(ids.size());
+                    for (int j = 0; j < chunkCount; j++) {
+                        all.addAll(values.get(j));
+                    }
+                    result.complete(all);
+                }
+            });
+            chunks.add(fetched);
+        }
+        // once the request failed, its chunks still waiting for the limiter are dropped, not fetched:
+        // completing them is enough, a cancel() would create an exception per chunk
+        result.whenComplete((all, exception) -> {
+            if (exception != null) {
+                chunks.forEach(chunk -> chunk.complete(List.of()));
+            }
+        });
+        return result;
+    }
+
+    // fails the request as soon as the chunk fails, before its permit lets the limiter start the next chunks
+    private CompletionStage<List<V>> fetchChunk(LongIdBatch chunk, CompletableFuture<List<V>> result) {
+        try {
+            return chunkFunction.apply(chunk).whenComplete((values, exception) -> {
+                if (exception != null) {
+                    result.completeExceptionally(exception);
+                }
+            });
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * the chunks being fetched, by all the requests
+     */
+    public int inFlight() {
+        return limiter.inFlight();
+    }
+}
@@ -0,0 +1,167 @@
+package org.example.m4.model;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * the rows of a fetch as columns instead of a List, e.g. the users or the emails of example1: a million rows are
+ * one long[] (or 8 MB off the heap), not a million objects plus the list of their pointers for the GC to trace
+ * <pre>
+ *     ColumnBatch&lt;User&gt; users = ColumnBatch.onHeap(ids, User::new, User::setId);
+ * </pre>
+ * as an Iterable, and through {@link #get(int)} and {@link #toList()}, it creates a row per element, safe to keep.
+ * {@link #forEachFlyweight(Consumer)} and {@link #flyweights()} hand out ONE row, moved to each id in turn:
+ * a consumer must not keep it, nor change it.
+ * <p>
+ * immutable, so it can be the output of a stage read by several others
+ *
+ * @param <T> the type of the rows, e.g. User or Email
+ */
+public final class ColumnBatch<T> implements Iterable<T> {
+
+    private final LongColumn ids;
+    private final LongFunction<? extends T> rowFactory;
+    private final ObjLongConsumer<? super T> mover;
+
+    private ColumnBatch(LongColumn ids, LongFunction<? extends T> rowFactory, ObjLongConsumer<? super T> mover) {
+        this.ids = ids;
+        this.rowFactory = Objects.requireNonNull(rowFactory);
+        this.mover = Objects.requireNonNull(mover);
+    }
+
+    /**
+     * the rows of the ids, in a long[] on the heap
+     *
+     * @param rowFactory creates the row of an id, e.g. User::new
+     * @param mover      moves a flyweight row to another id, e.g. User::setId
+     */
+    public static <T> ColumnBatch<T> onHeap(LongIdBatch ids, LongFunction<? extends T> rowFactory,
+                                            ObjLongConsumer<? super T> mover) {
+        return new ColumnBatch<>(LongColumn.onHeap(ids), rowFactory, mover);
+    }
+
+    /**
+     * the rows of the ids, in a direct buffer off the heap
+     */
+    public static <T> ColumnBatch<T> offHeap(LongIdBatch ids, LongFunction<? extends T> rowFactory,
+                                             ObjLongConsumer<? super T> mover) {
+        return new ColumnBatch<>(LongColumn.offHeap(ids), rowFactory, mover);
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    public long getId(int index) {
+        Objects.checkIndex(index, ids.size());
+        return ids.get(index);
+    }
+
+    /**
+     * a new row
+     */
+    public T get(int index) {
+        return rowFactory.apply(getId(index));
+    }
+
+    /**
+     * a new row at each step, like the iterator of a List
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < ids.size();
+            }
+
+            @Override
+            public T next() {
+                if (next >= ids.size()) {
+                    throw new NoSuchElementException();
+                }
+                return rowFactory.apply(ids.get(next++));
+            }
+        };
+    }
+
+    /**
+     * hands the same row to the consumer, moved to each id in turn
+     */
+    public void forEachFlyweight(Consumer<? super T> action) {
+        T flyweight = null;
+        for (int i = 0, size = ids.size(); i < size; i++) {
+            long id = ids.get(i);
+            if (flyweight == null) {
+                flyweight = rowFactory.apply(id);
+            } else {
+                mover.accept(flyweight, id);
+            }
+            action.accept(flyweight);
+        }
+    }
+
+    /**
+     * an iterator returning the same row, moved to each id in turn
+     */
+    public Iterator<T> flyweights() {
+        return new Iterator<>() {
+            private T flyweight;
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < ids.size();
+            }
+
+            @Override
+            public T next() {
+                if (next >= ids.size()) {
+                    throw new NoSuchElementException();
+                }
+                long id = ids.get(next++);
+                if (flyweight == null) {
+                    flyweight = rowFactory.apply(id);
+                } else {
+                    mover.accept(flyweight, id);
+                }
+                return flyweight;
+            }
+        };
+    }
+
+    /**
+     * creates a row per id, at the boundary with code still using a List
+     */
+    public List<T> toList() {
+        List<T> rows = new ArrayList<>(ids.size());
+        for (int i = 0, size = ids.size(); i < size; i++) {
+            rows.add(rowFactory.apply(ids.get(i)));
+        }
+        return rows;
+    }
+
+    public boolean isOffHeap() {
+        return ids.isOffHeap();
+    }
+
+    /**
+     * the bytes of the columns
+     */
+    public long sizeInBytes() {
+        return ids.sizeInBytes();
+    }
+
+    @Override
+    public String toString() {
+        return "ColumnBatch [size=" + size() + (isOffHeap() ? ", off-heap" : "") + "]";
+    }
+}
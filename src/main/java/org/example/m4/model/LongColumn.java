@@ -0,0 +1,85 @@
+package org.example.m4.model;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+/**
+ * one column of longs of a columnar batch, on the heap or off the heap
+ */
+sealed interface LongColumn permits LongColumn.Heap, LongColumn.Direct {
+
+    int size();
+
+    long get(int index);
+
+    /**
+     * the bytes holding the values, on the heap or not
+     */
+    long sizeInBytes();
+
+    boolean isOffHeap();
+
+    static LongColumn onHeap(LongIdBatch values) {
+        return new Heap(values.toArray());
+    }
+
+    static LongColumn offHeap(LongIdBatch values) {
+        LongBuffer buffer = ByteBuffer.allocateDirect(Math.multiplyExact(values.size(), Long.BYTES))
+                .order(ByteOrder.nativeOrder())
+                .asLongBuffer();
+        for (int i = 0; i < values.size(); i++) {
+            buffer.put(i, values.get(i));
+        }
+        return new Direct(buffer);
+    }
+
+    record Heap(long[] values) implements LongColumn {
+
+        @Override
+        public int size() {
+            return values.length;
+        }
+
+        @Override
+        public long get(int index) {
+            return values[index];
+        }
+
+        @Override
+        public long sizeInBytes() {
+            return (long) values.length * Long.BYTES;
+        }
+
+        @Override
+        public boolean isOffHeap() {
+            return false;
+        }
+    }
+
+    /**
+     * a direct buffer: the values are invisible to the GC, the memory is freed when the buffer is collected
+     */
+    record Direct(LongBuffer values) implements LongColumn {
+
+        @Override
+        public int size() {
+            return values.capacity();
+        }
+
+        @Override
+        public long get(int index) {
+            return values.get(index);
+        }
+
+        @Override
+        public long sizeInBytes() {
+            return (long) values.capacity() * Long.BYTES;
+        }
+
+        @Override
+        public boolean isOffHeap() {
+            return true;
+        }
+    }
+}
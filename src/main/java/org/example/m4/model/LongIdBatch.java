@@ -0,0 +1,143 @@
+package org.example.m4.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.LongFunction;
+import java.util.stream.LongStream;
+
+/**
+ * an immutable batch of ids backed by a primitive long[], used instead of List<Long>
+ * so that a batch of 100k ids is one array, not 100k boxed Longs plus their pointers
+ * <p>
+ * {@link #slice(int, int)} returns a view sharing the same array, nothing is copied.
+ */
+public final class LongIdBatch {
+
+    private static final LongIdBatch EMPTY = new LongIdBatch(new long[0], 0, 0);
+
+    private final long[] ids;
+    private final int offset;
+    private final int length;
+
+    private LongIdBatch(long[] ids, int offset, int length) {
+        this.ids = ids;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public static LongIdBatch empty() {
+        return EMPTY;
+    }
+
+    /**
+     * the ids are copied
+     */
+    public static LongIdBatch of(long... ids) {
+        return ids.length == 0 ? EMPTY : new LongIdBatch(ids.clone(), 0, ids.length);
+    }
+
+    /**
+     * the array is NOT copied, the caller must not modify it afterwards
+     */
+    public static LongIdBatch wrap(long[] ids) {
+        return new LongIdBatch(Objects.requireNonNull(ids), 0, ids.length);
+    }
+
+    /**
+     * the ids from startInclusive to endExclusive
+     */
+    public static LongIdBatch range(long startInclusive, long endExclusive) {
+        return wrap(LongStream.range(startInclusive, endExclusive).toArray());
+    }
+
+    /**
+     * converts a boxed collection, e.g. at the boundary with code still using List<Long>
+     */
+    public static LongIdBatch copyOf(Collection<Long> ids) {
+        long[] array = new long[ids.size()];
+        int i = 0;
+        for (long id : ids) {
+            array[i++] = id;
+        }
+        return wrap(array);
+    }
+
+    public int size() {
+        return length;
+    }
+
+    public boolean isEmpty() {
+        return length == 0;
+    }
+
+    public long get(int index) {
+        Objects.checkIndex(index, length);
+        return ids[offset + index];
+    }
+
+    /**
+     * a view of the ids from fromIndex (inclusive) to toIndex (exclusive), sharing the same array
+     */
+    public LongIdBatch slice(int fromIndex, int toIndex) {
+        Objects.checkFromToIndex(fromIndex, toIndex, length);
+        if (fromIndex == 0 && toIndex == length) {
+            return this;
+        }
+        return new LongIdBatch(ids, offset + fromIndex, toIndex - fromIndex);
+    }
+
+    public LongStream stream() {
+        return Arrays.stream(ids, offset, offset + length);
+    }
+
+    /**
+     * maps every id to an object, e.g. mapToObj(User::new), without boxing the ids
+     * it is the loop equivalent of stream().mapToObj(mapper).toList(), presized to the batch
+     */
+    public <T> List<T> mapToObj(LongFunction<? extends T> mapper) {
+        List<T> result = new ArrayList<>(length);
+        for (int i = offset, end = offset + length; i < end; i++) {
+            result.add(mapper.apply(ids[i]));
+        }
+        return result;
+    }
+
+    public long[] toArray() {
+        return Arrays.copyOfRange(ids, offset, offset + length);
+    }
+
+    /**
+     * boxes the ids, only meant for code still using List<Long>
+     */
+    public List<Long> boxed() {
+        return stream().boxed().toList();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof LongIdBatch other)) {
+            return false;
+        }
+        return Arrays.equals(ids, offset, offset + length, other.ids, other.offset, other.offset + other.length);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = 1;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            result = 31 * result + Long.hashCode(ids[i]);
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "LongIdBatch " + Arrays.toString(toArray());
+    }
+}
@@ -0,0 +1,242 @@
+package org.example.m4.pipeline;
+
+import org.example.m4.failure.Failures;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * a chain of stages defined once, and triggered many times
+ * <p>
+ * the dummy of DummyCompletableFutureExample is single-use: every request builds its whole chain again,
+ * a CompletableFuture and a completion per stage, plus the lambdas capturing the request.
+ * A Pipeline is an immutable template instead: {@link #trigger(Object)} runs its stages for one input,
+ * allocating one small object for the run, and the CompletableFuture of the result.
+ * <ul>
+ *     <li>the consecutive thenApply() / thenAccept() stages are fused into one function when the template is built</li>
+ *     <li>thenApplyAsync() hands the run over to the executor, thenCompose() waits for the stage without a thread</li>
+ *     <li>a failure skips the stages up to the next exceptionally(), which is given the cause, see {@link Failures#unwrap}</li>
+ * </ul>
+ * <pre>
+ *     Pipeline&lt;LongIdBatch, Void&gt; template = Pipeline.&lt;LongIdBatch&gt;start()
+ *             .thenApply(fetchUsers)
+ *             .thenAccept(logger);
+ *     template.trigger(ids1);
+ *     template.trigger(ids2);
+ * </pre>
+ *
+ * @param <I> the input of a run
+ * @param <O> the output of a run
+ */
+public final class Pipeline<I, O> {
+
+    private static final Step[] NO_STEPS = new Step[0];
+    private static final Pipeline<?, ?> START = new Pipeline<>(NO_STEPS);
+
+    private final Step[] steps;
+
+    private Pipeline(Step[] steps) {
+        this.steps = steps;
+    }
+
+    /**
+     * an empty template, triggering it completes with the input
+     */
+    @SuppressWarnings("unchecked")
+    public static <I> Pipeline<I, I> start() {
+        return (Pipeline<I, I>) START;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <R> Pipeline<I, R> thenApply(Function<? super O, ? extends R> function) {
+        Function<Object, Object> step = (Function<Object, Object>) function;
+        // fused with the previous function: one call per run instead of two stages
+        if (steps.length > 0 && steps[steps.length - 1] instanceof Apply previous) {
+            return with(steps.length - 1, new Apply(previous.function.andThen(step)));
+        }
+        return with(steps.length, new Apply(step));
+    }
+
+    public Pipeline<I, Void> thenAccept(Consumer<? super O> consumer) {
+        return thenApply(value -> {
+            consumer.accept(value);
+            return null;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    public <R> Pipeline<I, R> thenApplyAsync(Function<? super O, ? extends R> function, Executor executor) {
+        return with(steps.length, new ApplyAsync((Function<Object, Object>) function, executor));
+    }
+
+    @SuppressWarnings("unchecked")
+    public <R> Pipeline<I, R> thenCompose(Function<? super O, ? extends CompletionStage<R>> function) {
+        return with(steps.length, new Compose((Function<Object, CompletionStage<?>>) (Function<?, ?>) function));
+    }
+
+    /**
+     * recovers from a failure of any stage before, given the cause of the failure
+     */
+    @SuppressWarnings("unchecked")
+    public Pipeline<I, O> exceptionally(Function<Throwable, ? extends O> recovery) {
+        return with(steps.length, new Recover((Function<Throwable, Object>) recovery));
+    }
+
+    /**
+     * runs the stages for the input, on the calling thread until the first async stage
+     */
+    public CompletableFuture<O> trigger(I input) {
+        Run<O> run = new Run<>(steps);
+        run.advance(input, null, 0);
+        return run.result;
+    }
+
+    /**
+     * runs the stages for the input, from the executor like dummy.completeAsync()
+     */
+    public CompletableFuture<O> triggerAsync(I input, Executor executor) {
+        Run<O> run = new Run<>(steps);
+        run.value = input;
+        run.next = 0;
+        try {
+            executor.execute(run);
+        } catch (RuntimeException e) {
+            run.result.completeExceptionally(e);
+        }
+        return run.result;
+    }
+
+    /**
+     * the number of stages once fused
+     */
+    public int stageCount() {
+        return steps.length;
+    }
+
+    private <R> Pipeline<I, R> with(int index, Step step) {
+        Step[] copy = Arrays.copyOf(steps, index + 1);
+        copy[index] = step;
+        return new Pipeline<>(copy);
+    }
+
+    private sealed interface Step permits Apply, ApplyAsync, Compose, Recover {
+    }
+
+    private record Apply(Function<Object, Object> function) implements Step {
+    }
+
+    private record ApplyAsync(Function<Object, Object> function, Executor executor) implements Step {
+    }
+
+    private record Compose(Function<Object, CompletionStage<?>> function) implements Step {
+    }
+
+    private record Recover(Function<Throwable, Object> recovery) implements Step {
+    }
+
+    /**
+     * the state of one run: the value between two stages, and the stage to run next
+     * it is handed over to the executor of an async stage, and to the stage of a compose,
+     * which then resume it
+     */
+    private static final class Run<O> implements Runnable, BiConsumer<Object, Throwable> {
+        private final Step[] steps;
+        final CompletableFuture<O> result = new CompletableFuture<>();
+        // written before the hand-over, read after it
+        Object value;
+        int next;
+        // true when handed over to the executor of the ApplyAsync at "next", false for triggerAsync()
+        boolean applyAsync;
+
+        Run(Step[] steps) {
+            this.steps = steps;
+        }
+
+        // resumed by the executor of an ApplyAsync: runs its function, or the first stage of triggerAsync()
+        @Override
+        public void run() {
+            int index = next;
+            if (applyAsync) {
+                applyAsync = false;
+                ApplyAsync async = (ApplyAsync) steps[index];
+                Object output;
+                try {
+                    output = async.function.apply(value);
+                } catch (Throwable e) {
+                    advance(null, e, index + 1);
+                    return;
+                }
+                advance(output, null, index + 1);
+            } else {
+                advance(value, null, index);
+            }
+        }
+
+        // resumed by the stage of a Compose
+        @Override
+        public void accept(Object output, Throwable failure) {
+            advance(output, failure, next);
+        }
+
+        @SuppressWarnings("unchecked")
+        void advance(Object current, Throwable failure, int from) {
+            for (int index = from; index < steps.length; index++) {
+                Step step = steps[index];
+                if (failure != null) {
+                    if (step instanceof Recover recover) {
+                        try {
+                            current = recover.recovery.apply(Failures.unwrap(failure));
+                            failure = null;
+                        } catch (Throwable e) {
+                            failure = e;
+                        }
+                    }
+                    continue;
+                }
+                try {
+                    switch (step) {
+                        case Apply apply -> current = apply.function.apply(current);
+                        case ApplyAsync async -> {
+                            value = current;
+                            next = index;
+                            applyAsync = true;
+                            async.executor.execute(this);
+                            return;
+                        }
+                        case Compose compose -> {
+                            CompletionStage<?> stage = compose.function.apply(current);
+                            // already completed: go on here, instead of one stack frame more
+                            if (stage instanceof CompletableFuture<?> future && future.isDone()) {
+                                try {
+                                    current = future.join();
+                                } catch (CompletionException e) {
+                                    failure = e.getCause() != null ? e.getCause() : e;
+                                }
+                            } else {
+                                next = index + 1;
+                                stage.whenComplete(this);
+                                return;
+                            }
+                        }
+                        case Recover recover -> {
+                            // nothing to recover from
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure = e;
+                }
+            }
+            if (failure != null) {
+                result.completeExceptionally(failure);
+            } else {
+                result.complete((O) current);
+            }
+        }
+    }
+}
@@ -0,0 +1,696 @@
+package org.example.m4.promise;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * a CompletionStage for linear chains: every stage has at most ONE dependent
+ * <p>
+ * a CompletableFuture keeps a stack of dependents, and allocates a completion object per dependent on top of
+ * the dependent future. The chains of AsyncException and DummyCompletableFutureExample are linear:
+ * supply -> apply -> accept, one consumer per stage. Here:
+ * <ul>
+ *     <li>the whole state is one field, swapped with a CAS: pending, the dependent waiting, or the result</li>
+ *     <li>a stage is its own continuation: thenApply() allocates one object, not a future and a completion</li>
+ *     <li>a failure is passed on as it is, not wrapped in a CompletionException</li>
+ * </ul>
+ * attaching a second dependent throws IllegalStateException: use {@link #toCompletableFuture()} to fan out.
+ * join(), toCompletableFuture() and the stages combining two stages (thenCombine, applyToEither...) are not
+ * the dependent: they go through a CompletableFuture of this stage, created at their first use while pending,
+ * which holds the dependent next to it.
+ * <p>
+ * the dependent of a completed stage runs on the caller thread, the dependent of a pending one runs on the
+ * thread completing it, like the non-async stages of a CompletableFuture. Completing a pending chain runs its
+ * stages in a loop, not a frame per stage: a long chain does not overflow the stack.
+ */
+public class LinearPromise<T> implements CompletionStage<T> {
+
+    private static final VarHandle STATE;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            STATE = lookup.findVarHandle(LinearPromise.class, "state", Object.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static final Executor ASYNC_POOL = ForkJoinPool.commonPool();
+
+    // the result null
+    private static final Object NIL = new Object();
+
+    // returned by swap() when the stage is already completed
+    private static final Object ALREADY_COMPLETED = new Object();
+
+    // the kinds of stage
+    private static final int APPLY = 0;
+    private static final int ACCEPT = 1;
+    private static final int RUN = 2;
+    private static final int HANDLE = 3;
+    private static final int WHEN_COMPLETE = 4;
+    private static final int EXCEPTIONALLY = 5;
+    private static final int COMPOSE = 6;
+    private static final int EXCEPTIONALLY_COMPOSE = 7;
+
+    // null: pending; a Continuation: pending with its dependent, or its Bridge; anything else: the encoded result
+    private volatile Object state;
+
+    public LinearPromise() {
+    }
+
+    public static <T> LinearPromise<T> completed(T value) {
+        LinearPromise<T> promise = new LinearPromise<>();
+        promise.state = encode(value);
+        return promise;
+    }
+
+    public static <T> LinearPromise<T> failed(Throwable failure) {
+        LinearPromise<T> promise = new LinearPromise<>();
+        promise.state = new Failure(failure);
+        return promise;
+    }
+
+    public static <T> LinearPromise<T> supplyAsync(Supplier<T> supplier) {
+        return supplyAsync(supplier, ASYNC_POOL);
+    }
+
+    public static <T> LinearPromise<T> supplyAsync(Supplier<T> supplier, Executor executor) {
+        LinearPromise<T> promise = new LinearPromise<>();
+        executor.execute(() -> {
+            try {
+                promise.complete(supplier.get());
+            } catch (Throwable e) {
+                promise.completeExceptionally(e);
+            }
+        });
+        return promise;
+    }
+
+    public boolean complete(T value) {
+        return completeEncoded(encode(value));
+    }
+
+    public boolean completeExceptionally(Throwable failure) {
+        return completeEncoded(new Failure(failure));
+    }
+
+    public boolean isDone() {
+        Object current = state;
+        return current != null && !(current instanceof Continuation);
+    }
+
+    /**
+     * the result, or waits for it through the CompletableFuture of this stage, without taking the place of the dependent
+     * like CompletableFuture.join(), a failure is thrown in a CompletionException, but a CancellationException as it is
+     */
+    public T join() {
+        Object current = state;
+        if (current == null || current instanceof Continuation) {
+            Bridge<T> bridge = bridge();
+            if (bridge != null) {
+                return bridge.join();
+            }
+            current = state;
+        }
+        if (current instanceof Failure failure) {
+            if (failure.exception instanceof CancellationException cancellation) {
+                throw cancellation;
+            }
+            throw failure.exception instanceof CompletionException completionException
+                    ? completionException : new CompletionException(failure.exception);
+        }
+        return decode(current);
+    }
+
+    /**
+     * a new CompletableFuture of this stage at every call, it does not take the place of the dependent
+     */
+    @Override
+    public CompletableFuture<T> toCompletableFuture() {
+        CompletableFuture<T> future = future();
+        return future instanceof Bridge ? future.copy() : future;
+    }
+
+    // ---------------------------------------------------------------------------------------------------------------
+    // linear stages
+
+    @Override
+    public <U> LinearPromise<U> thenApply(Function<? super T, ? extends U> fn) {
+        return then(APPLY, fn, null);
+    }
+
+    @Override
+    public <U> LinearPromise<U> thenApplyAsync(Function<? super T, ? extends U> fn) {
+        return thenApplyAsync(fn, ASYNC_POOL);
+    }
+
+    @Override
+    public <U> LinearPromise<U> thenApplyAsync(Function<? super T, ? extends U> fn, Executor executor) {
+        return then(APPLY, fn, executor);
+    }
+
+    @Override
+    public LinearPromise<Void> thenAccept(Consumer<? super T> action) {
+        return then(ACCEPT, action, null);
+    }
+
+    @Override
+    public LinearPromise<Void> thenAcceptAsync(Consumer<? super T> action) {
+        return thenAcceptAsync(action, ASYNC_POOL);
+    }
+
+    @Override
+    public LinearPromise<Void> thenAcceptAsync(Consumer<? super T> action, Executor executor) {
+        return then(ACCEPT, action, executor);
+    }
+
+    @Override
+    public LinearPromise<Void> thenRun(Runnable action) {
+        return then(RUN, action, null);
+    }
+
+    @Override
+    public LinearPromise<Void> thenRunAsync(Runnable action) {
+        return thenRunAsync(action, ASYNC_POOL);
+    }
+
+    @Override
+    public LinearPromise<Void> thenRunAsync(Runnable action, Executor executor) {
+        return then(RUN, action, executor);
+    }
+
+    @Override
+    public <U> LinearPromise<U> handle(BiFunction<? super T, Throwable, ? extends U> fn) {
+        return then(HANDLE, fn, null);
+    }
+
+    @Override
+    public <U> LinearPromise<U> handleAsync(BiFunction<? super T, Throwable, ? extends U> fn) {
+        return handleAsync(fn, ASYNC_POOL);
+    }
+
+    @Override
+    public <U> LinearPromise<U> handleAsync(BiFunction<? super T, Throwable, ? extends U> fn, Executor executor) {
+        return then(HANDLE, fn, executor);
+    }
+
+    @Override
+    public LinearPromise<T> whenComplete(BiConsumer<? super T, ? super Throwable> action) {
+        return then(WHEN_COMPLETE, action, null);
+    }
+
+    @Override
+    public LinearPromise<T> whenCompleteAsync(BiConsumer<? super T, ? super Throwable> action) {
+        return whenCompleteAsync(action, ASYNC_POOL);
+    }
+
+    @Override
+    public LinearPromise<T> whenCompleteAsync(BiConsumer<? super T, ? super Throwable> action, Executor executor) {
+        return then(WHEN_COMPLETE, action, executor);
+    }
+
+    @Override
+    public LinearPromise<T> exceptionally(Function<Throwable, ? extends T> fn) {
+        return then(EXCEPTIONALLY, fn, null);
+    }
+
+    @Override
+    public LinearPromise<T> exceptionallyAsync(Function<Throwable, ? extends T> fn) {
+        return exceptionallyAsync(fn, ASYNC_POOL);
+    }
+
+    @Override
+    public LinearPromise<T> exceptionallyAsync(Function<Throwable, ? extends T> fn, Executor executor) {
+        return then(EXCEPTIONALLY, fn, executor);
+    }
+
+    @Override
+    public <U> LinearPromise<U> thenCompose(Function<? super T, ? extends CompletionStage<U>> fn) {
+        return then(COMPOSE, fn, null);
+    }
+
+    @Override
+    public <U> LinearPromise<U> thenComposeAsync(Function<? super T, ? extends CompletionStage<U>> fn) {
+        return thenComposeAsync(fn, ASYNC_POOL);
+    }
+
+    @Override
+    public <U> LinearPromise<U> thenComposeAsync(Function<? super T, ? extends CompletionStage<U>> fn, Executor executor) {
+        return then(COMPOSE, fn, executor);
+    }
+
+    @Override
+    public LinearPromise<T> exceptionallyCompose(Function<Throwable, ? extends CompletionStage<T>> fn) {
+        return then(EXCEPTIONALLY_COMPOSE, fn, null);
+    }
+
+    @Override
+    public LinearPromise<T> exceptionallyComposeAsync(Function<Throwable, ? extends CompletionStage<T>> fn) {
+        return exceptionallyComposeAsync(fn, ASYNC_POOL);
+    }
+
+    @Override
+    public LinearPromise<T> exceptionallyComposeAsync(Function<Throwable, ? extends CompletionStage<T>> fn, Executor executor) {
+        return then(EXCEPTIONALLY_COMPOSE, fn, executor);
+    }
+
+    // ---------------------------------------------------------------------------------------------------------------
+    // stages of two stages, run by the CompletableFuture of this one
+
+    @Override
+    public <U, V> CompletionStage<V> thenCombine(CompletionStage<? extends U> other, BiFunction<? super T, ? super U, ? extends V> fn) {
+        return future().thenCombine(other, fn);
+    }
+
+    @Override
+    public <U, V> CompletionStage<V> thenCombineAsync(CompletionStage<? extends U> other, BiFunction<? super T, ? super U, ? extends V> fn) {
+        return future().thenCombineAsync(other, fn);
+    }
+
+    @Override
+    public <U, V> CompletionStage<V> thenCombineAsync(CompletionStage<? extends U> other, BiFunction<? super T, ? super U, ? extends V> fn, Executor executor) {
+        return future().thenCombineAsync(other, fn, executor);
+    }
+
+    @Override
+    public <U> CompletionStage<Void> thenAcceptBoth(CompletionStage<? extends U> other, BiConsumer<? super T, ? super U> action) {
+        return future().thenAcceptBoth(other, action);
+    }
+
+    @Override
+    public <U> CompletionStage<Void> thenAcceptBothAsync(CompletionStage<? extends U> other, BiConsumer<? super T, ? super U> action) {
+        return future().thenAcceptBothAsync(other, action);
+    }
+
+    @Override
+    public <U> CompletionStage<Void> thenAcceptBothAsync(CompletionStage<? extends U> other, BiConsumer<? super T, ? super U> action, Executor executor) {
+        return future().thenAcceptBothAsync(other, action, executor);
+    }
+
+    @Override
+    public CompletionStage<Void> runAfterBoth(CompletionStage<?> other, Runnable action) {
+        return future().runAfterBoth(other, action);
+    }
+
+    @Override
+    public CompletionStage<Void> runAfterBothAsync(CompletionStage<?> other, Runnable action) {
+        return future().runAfterBothAsync(other, action);
+    }
+
+    @Override
+    public CompletionStage<Void> runAfterBothAsync(CompletionStage<?> other, Runnable action, Executor executor) {
+        return future().runAfterBothAsync(other, action, executor);
+    }
+
+    @Override
+    public <U> CompletionStage<U> applyToEither(CompletionStage<? extends T> other, Function<? super T, U> fn) {
+        return future().applyToEither(other, fn);
+    }
+
+    @Override
+    public <U> CompletionStage<U> applyToEitherAsync(CompletionStage<? extends T> other, Function<? super T, U> fn) {
+        return future().applyToEitherAsync(other, fn);
+    }
+
+    @Override
+    public <U> CompletionStage<U> applyToEitherAsync(CompletionStage<? extends T> other, Function<? super T, U> fn, Executor executor) {
+        return future().applyToEitherAsync(other, fn, executor);
+    }
+
+    @Override
+    public CompletionStage<Void> acceptEither(CompletionStage<? extends T> other, Consumer<? super T> action) {
+        return future().acceptEither(other, action);
+    }
+
+    @Override
+    public CompletionStage<Void> acceptEitherAsync(CompletionStage<? extends T> other, Consumer<? super T> action) {
+        return future().acceptEitherAsync(other, action);
+    }
+
+    @Override
+    public CompletionStage<Void> acceptEitherAsync(CompletionStage<? extends T> other, Consumer<? super T> action, Executor executor) {
+        return future().acceptEitherAsync(other, action, executor);
+    }
+
+    @Override
+    public CompletionStage<Void> runAfterEither(CompletionStage<?> other, Runnable action) {
+        return future().runAfterEither(other, action);
+    }
+
+    @Override
+    public CompletionStage<Void> runAfterEitherAsync(CompletionStage<?> other, Runnable action) {
+        return future().runAfterEitherAsync(other, action);
+    }
+
+    @Override
+    public CompletionStage<Void> runAfterEitherAsync(CompletionStage<?> other, Runnable action, Executor executor) {
+        return future().runAfterEitherAsync(other, action, executor);
+    }
+
+    @Override
+    public String toString() {
+        Object current = state;
+        String status = current == null || current instanceof Continuation ? "Incomplete"
+                : current instanceof Failure failure ? "Completed exceptionally: " + failure.exception
+                : "Completed normally";
+        return super.toString() + "[" + status + "]";
+    }
+
+    // ---------------------------------------------------------------------------------------------------------------
+
+    private <U> LinearPromise<U> then(int mode, Object fn, Executor executor) {
+        Objects.requireNonNull(fn);
+        Object current = state;
+        if (executor == null && mode < COMPOSE && current != null && !(current instanceof Continuation)) {
+            // completed: the stage runs right now, its promise is only a holder for the result
+            LinearPromise<U> promise = new LinearPromise<>();
+            promise.state = fire(mode, fn, current);
+            return promise;
+        }
+        Stage<U> stage = new Stage<>(mode, fn, executor);
+        attach(stage);
+        return stage;
+    }
+
+    // sets the single dependent, or runs it right away when this stage is completed
+    private void attach(Stage<?> dependent) {
+        while (true) {
+            Object current = state;
+            if (current == null) {
+                if (STATE.compareAndSet(this, (Object) null, (Object) dependent)) {
+                    return;
+                }
+            } else if (current instanceof Bridge<?> bridge) {
+                if (bridge.attach(dependent)) {
+                    return;
+                }
+                if (bridge.dependent != Bridge.DONE) {
+                    throw new IllegalStateException("A LinearPromise has a single dependent, use toCompletableFuture() to add more");
+                }
+                // completed meanwhile: the state holds the result now
+            } else if (current instanceof Continuation) {
+                throw new IllegalStateException("A LinearPromise has a single dependent, use toCompletableFuture() to add more");
+            } else {
+                propagate(dependent, current);
+                return;
+            }
+        }
+    }
+
+    // the CompletableFuture of this stage: the Bridge while pending, a completed one afterwards
+    private CompletableFuture<T> future() {
+        Object current = state;
+        if (current == null || current instanceof Continuation) {
+            Bridge<T> bridge = bridge();
+            if (bridge != null) {
+                return bridge;
+            }
+            current = state;
+        }
+        return current instanceof Failure failure
+                ? CompletableFuture.failedFuture(failure.exception)
+                : CompletableFuture.completedFuture(decode(current));
+    }
+
+    // puts a Bridge in the state, ahead of the dependent if any; null once completed
+    @SuppressWarnings("unchecked")
+    private Bridge<T> bridge() {
+        while (true) {
+            Object current = state;
+            if (current instanceof Bridge) {
+                return (Bridge<T>) current;
+            }
+            if (current != null && !(current instanceof Continuation)) {
+                return null;
+            }
+            Bridge<T> bridge = new Bridge<>((Stage<?>) current);
+            if (STATE.compareAndSet(this, current, bridge)) {
+                return bridge;
+            }
+        }
+    }
+
+    boolean completeEncoded(Object result) {
+        Object previous = swap(result);
+        if (previous == ALREADY_COMPLETED) {
+            return false;
+        }
+        propagate((Continuation) previous, result);
+        return true;
+    }
+
+    // sets the result, and returns what it replaced: null, the continuation, or ALREADY_COMPLETED
+    private Object swap(Object result) {
+        while (true) {
+            Object current = state;
+            if (current != null && !(current instanceof Continuation)) {
+                return ALREADY_COMPLETED;
+            }
+            if (STATE.compareAndSet(this, current, result)) {
+                return current;
+            }
+        }
+    }
+
+    // runs the continuation of a stage just completed, then the one of each stage it completes in turn:
+    // a loop rather than a frame per stage, like the postComplete() of a CompletableFuture
+    private static void propagate(Continuation continuation, Object result) {
+        while (continuation != null) {
+            if (continuation instanceof Bridge<?> bridge) {
+                continuation = bridge.completeWith(result);
+                continue;
+            }
+            Stage<?> stage = (Stage<?>) continuation;
+            Object own = stage.step(result);
+            if (own == Stage.PENDING) {
+                return;
+            }
+            LinearPromise<?> promise = stage;
+            Object previous = promise.swap(own);
+            if (previous == ALREADY_COMPLETED) {
+                return;
+            }
+            continuation = (Continuation) previous;
+            result = own;
+        }
+    }
+
+    // the stages which only run on a success, or only on a failure
+    private static boolean passesThrough(int mode, boolean failed) {
+        return switch (mode) {
+            case APPLY, ACCEPT, RUN, COMPOSE -> failed;
+            case EXCEPTIONALLY, EXCEPTIONALLY_COMPOSE -> !failed;
+            default -> false;
+        };
+    }
+
+    // runs a stage, but a compose one, given the encoded result of the stage before, and returns its own
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object fire(int mode, Object fn, Object result) {
+        if (passesThrough(mode, result instanceof Failure)) {
+            return result;
+        }
+        Throwable failure = result instanceof Failure f ? f.exception : null;
+        Object value = failure == null ? decode(result) : null;
+        try {
+            switch (mode) {
+                case APPLY:
+                    return encode(((Function) fn).apply(value));
+                case ACCEPT:
+                    ((Consumer) fn).accept(value);
+                    return NIL;
+                case RUN:
+                    ((Runnable) fn).run();
+                    return NIL;
+                case HANDLE:
+                    return encode(((BiFunction) fn).apply(value, failure));
+                case WHEN_COMPLETE:
+                    ((BiConsumer) fn).accept(value, failure);
+                    return result;
+                default:
+                    return encode(((Function) fn).apply(failure));
+            }
+        } catch (Throwable e) {
+            // whenComplete() keeps the failure it was given over the one of its action
+            return mode == WHEN_COMPLETE && failure != null ? result : new Failure(e);
+        }
+    }
+
+    static Object encode(Object value) {
+        if (value == null) {
+            return NIL;
+        }
+        // a result that would be mistaken for a state
+        if (value instanceof Continuation || value instanceof Failure || value instanceof Box) {
+            return new Box(value);
+        }
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> T decode(Object result) {
+        if (result == NIL) {
+            return null;
+        }
+        return (T) (result instanceof Box box ? box.value : result);
+    }
+
+    /**
+     * what the state of a pending stage holds: its dependent, or its Bridge
+     */
+    sealed interface Continuation permits Stage, Bridge {
+    }
+
+    record Failure(Throwable exception) {
+    }
+
+    private record Box(Object value) {
+    }
+
+    /**
+     * the CompletableFuture of a pending stage, for join() and the stages out of the linear chain
+     * it takes the place of the dependent in the state, and keeps the dependent, so both are run on completion
+     */
+    private static final class Bridge<T> extends CompletableFuture<T> implements Continuation {
+        private static final VarHandle DEPENDENT;
+
+        static {
+            try {
+                DEPENDENT = MethodHandles.lookup().findVarHandle(Bridge.class, "dependent", Object.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        // in "dependent" once the stage is completed
+        private static final Object DONE = new Object();
+
+        // null, the dependent Stage, or DONE
+        private volatile Object dependent;
+
+        Bridge(Stage<?> dependent) {
+            this.dependent = dependent;
+        }
+
+        // false when there is a dependent already, or the stage is completed
+        boolean attach(Stage<?> stage) {
+            return DEPENDENT.compareAndSet(this, (Object) null, (Object) stage);
+        }
+
+        // completes the future, and returns the dependent to run next
+        Stage<?> completeWith(Object result) {
+            if (result instanceof Failure failure) {
+                completeExceptionally(failure.exception);
+            } else {
+                complete(decode(result));
+            }
+            Object previous = DEPENDENT.getAndSet(this, DONE);
+            return (Stage<?>) previous;
+        }
+    }
+
+    /**
+     * a stage, and the continuation of the stage before it
+     */
+    private static final class Stage<U> extends LinearPromise<U> implements Continuation, Runnable {
+        // in "input" once a compose stage waits for the stage its function returned
+        private static final Object COMPOSING = new Object();
+        // returned by step() when the stage completes later: on its executor, or with the stage its function returned
+        private static final Object PENDING = new Object();
+
+        private final int mode;
+        private final Object fn;
+        private final Executor executor;
+        // the result of the stage before while handed over to the executor, or COMPOSING
+        private Object input;
+
+        Stage(int mode, Object fn, Executor executor) {
+            this.mode = mode;
+            this.fn = fn;
+            this.executor = executor;
+        }
+
+        // given the result of the stage before, returns its own, or PENDING
+        private Object step(Object result) {
+            if (input == COMPOSING) {
+                // the result of the stage returned by the compose function
+                return result;
+            }
+            // skipped without a thread hop, like in a CompletableFuture
+            if (passesThrough(mode, result instanceof Failure)) {
+                return result;
+            }
+            if (executor == null) {
+                return run(result);
+            }
+            input = result;
+            try {
+                executor.execute(this);
+            } catch (Throwable e) {
+                return new Failure(e);
+            }
+            return PENDING;
+        }
+
+        @Override
+        public void run() {
+            Object result = input;
+            input = null;
+            Object own = run(result);
+            if (own != PENDING) {
+                completeEncoded(own);
+            }
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private Object run(Object result) {
+            if (mode < COMPOSE) {
+                return fire(mode, fn, result);
+            }
+            try {
+                CompletionStage<?> stage = (CompletionStage<?>) ((Function) fn).apply(mode == COMPOSE
+                        ? decode(result) : ((Failure) result).exception);
+                if (stage instanceof LinearPromise<?> promise) {
+                    Object current = promise.state;
+                    if (current != null && !(current instanceof Continuation)) {
+                        // completed already: its result is the one of this stage, no need to wait
+                        return current;
+                    }
+                    input = COMPOSING;
+                    promise.attach(this);
+                } else if (stage instanceof CompletableFuture<?> future && future.isDone()) {
+                    return future.handle(Stage::outcome).join();
+                } else {
+                    input = COMPOSING;
+                    stage.whenComplete((value, exception) -> completeEncoded(outcome(value, exception)));
+                }
+            } catch (Throwable e) {
+                // the function threw, returned null, or a LinearPromise with a dependent already:
+                // this stage fails, like the dependent of a CompletableFuture, the completing thread does not see it
+                input = null;
+                return new Failure(e);
+            }
+            return PENDING;
+        }
+
+        private static Object outcome(Object value, Throwable exception) {
+            return exception == null ? encode(value)
+                    : new Failure(exception instanceof CompletionException && exception.getCause() != null
+                    ? exception.getCause() : exception);
+        }
+    }
+}
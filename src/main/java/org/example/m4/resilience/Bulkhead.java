@@ -0,0 +1,72 @@
+package org.example.m4.resilience;
+
+import org.example.m4.failure.Failures;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * caps the calls in flight to one dependency, and fails the others fast with a {@link BulkheadFullException}
+ * <p>
+ * a slot is held until the future of the call completes, not until the function returns,
+ * so a dependency that hangs can hold at most maxConcurrentCalls slots, instead of every thread of the pools.
+ * Unlike {@link org.example.m4.http.AsyncLimiter}, nothing waits in a queue.
+ */
+public class Bulkhead {
+
+    private final String name;
+    private final int maxConcurrentCalls;
+    private final AtomicInteger available;
+    private final LongAdder rejected = new LongAdder();
+
+    public Bulkhead(String name, int maxConcurrentCalls) {
+        if (maxConcurrentCalls < 1) {
+            throw new IllegalArgumentException("maxConcurrentCalls must be positive: " + maxConcurrentCalls);
+        }
+        this.name = name;
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.available = new AtomicInteger(maxConcurrentCalls);
+    }
+
+    public <T, R> Function<T, CompletableFuture<R>> wrap(Function<T, ? extends CompletableFuture<R>> fetch) {
+        return value -> call(() -> fetch.apply(value));
+    }
+
+    public <R> CompletableFuture<R> call(Supplier<? extends CompletableFuture<R>> call) {
+        if (!tryAcquire()) {
+            rejected.increment();
+            return Failures.failedFuture(new BulkheadFullException(name + " is full: " + maxConcurrentCalls + " calls in flight"));
+        }
+        CompletableFuture<R> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            available.incrementAndGet();
+            return CompletableFuture.failedFuture(e);
+        }
+        future.whenComplete((value, exception) -> available.incrementAndGet());
+        return future;
+    }
+
+    public int inFlight() {
+        return maxConcurrentCalls - available.get();
+    }
+
+    public long rejectedCount() {
+        return rejected.sum();
+    }
+
+    private boolean tryAcquire() {
+        int current;
+        do {
+            current = available.get();
+            if (current == 0) {
+                return false;
+            }
+        } while (!available.compareAndSet(current, current - 1));
+        return true;
+    }
+}
@@ -0,0 +1,16 @@
+package org.example.m4.resilience;
+
+import org.example.m4.failure.StacklessException;
+
+/**
+ * the call was not sent, because the {@link Bulkhead} has no free slot
+ * stackless: while the bulkhead is full, every extra call fails with one
+ */
+public class BulkheadFullException extends StacklessException {
+
+    private static final long serialVersionUID = 1L;
+
+    public BulkheadFullException(String message) {
+        super(message);
+    }
+}
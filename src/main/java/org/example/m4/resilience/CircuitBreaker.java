@@ -0,0 +1,217 @@
+package org.example.m4.resilience;
+
+import org.example.m4.failure.Failures;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * stops calling a dependency that keeps failing or answering slowly, and fails the calls fast instead
+ * <p>
+ * CLOSED: the calls go through, and the outcomes of the last windowSize calls are kept.
+ * Once the window is full, when the failure rate or the slow call rate reaches its threshold, the breaker opens.
+ * <br>
+ * OPEN: the calls fail right away with a {@link CircuitBreakerOpenException}, without calling the dependency.
+ * After openMillis, the next call is let through as a probe.
+ * <br>
+ * HALF_OPEN: only the probe is in flight, the other calls fail fast.
+ * If it succeeds on time, the breaker closes with an empty window, otherwise it opens again.
+ * A probe that has not answered after openMillis, e.g. a hung dependency, is given up:
+ * the next call is let through as a new probe, and the late outcome of the old one is ignored.
+ * <p>
+ * no lock: the window is a ring of outcomes with running counts, the state is swapped with a CAS
+ * a cancelled call is not recorded, it says nothing about the dependency
+ */
+public class CircuitBreaker {
+
+    public enum Kind {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private record State(Kind kind, long sinceNanos) {
+    }
+
+    // the outcomes in the window
+    private static final int EMPTY = 0;
+    private static final int SUCCESS = 1;
+    private static final int FAILURE = 2;
+    private static final int SLOW = 4;
+
+    private final String name;
+    private final int windowSize;
+    private final double failureRateThreshold;
+    private final double slowCallRateThreshold;
+    private final long slowCallNanos;
+    private final long openNanos;
+
+    private final AtomicReference<State> state = new AtomicReference<>(new State(Kind.CLOSED, System.nanoTime()));
+    private final AtomicIntegerArray window;
+    private final AtomicLong next = new AtomicLong();
+    private final AtomicInteger calls = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicInteger slowCalls = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param windowSize            the number of recent calls the rates are computed on
+     * @param failureRateThreshold  e.g. 0.5 opens the breaker when half of the calls in the window failed
+     * @param slowCallRateThreshold e.g. 0.8 opens the breaker when 80% of the calls in the window were slow
+     * @param slowCallMillis        a call taking longer is slow, whether it failed or not
+     * @param openMillis            how long the breaker stays open before a probe is let through
+     */
+    public CircuitBreaker(String name, int windowSize, double failureRateThreshold,
+                          double slowCallRateThreshold, long slowCallMillis, long openMillis) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("windowSize must be positive: " + windowSize);
+        }
+        this.name = name;
+        this.windowSize = windowSize;
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+        this.window = new AtomicIntegerArray(windowSize);
+    }
+
+    public <T, R> Function<T, CompletableFuture<R>> wrap(Function<T, ? extends CompletableFuture<R>> fetch) {
+        return value -> call(() -> fetch.apply(value));
+    }
+
+    public <R> CompletableFuture<R> call(Supplier<? extends CompletableFuture<R>> call) {
+        State permitted = tryAcquire();
+        if (permitted == null) {
+            rejected.increment();
+            return Failures.failedFuture(new CircuitBreakerOpenException(name + " is " + state.get().kind()));
+        }
+        long start = System.nanoTime();
+        CompletableFuture<R> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        future.whenComplete((value, exception) -> {
+            boolean cancelled = exception != null && Failures.unwrap(exception) instanceof CancellationException;
+            onResult(permitted, cancelled, exception != null, System.nanoTime() - start);
+        });
+        return future;
+    }
+
+    /**
+     * an open breaker past its delay stays OPEN until a call probes it
+     */
+    public Kind state() {
+        return state.get().kind();
+    }
+
+    /**
+     * the share of failed calls in the window, 0 until the window is full
+     */
+    public double failureRate() {
+        int count = calls.get();
+        return count < windowSize ? 0.0 : (double) failures.get() / count;
+    }
+
+    /**
+     * the share of slow calls in the window, 0 until the window is full
+     */
+    public double slowCallRate() {
+        int count = calls.get();
+        return count < windowSize ? 0.0 : (double) slowCalls.get() / count;
+    }
+
+    /**
+     * the calls failed fast
+     */
+    public long rejectedCount() {
+        return rejected.sum();
+    }
+
+    // the state the call is permitted in, null if it is not permitted
+    private State tryAcquire() {
+        while (true) {
+            State current = state.get();
+            switch (current.kind()) {
+                case CLOSED:
+                    return current;
+                case HALF_OPEN:
+                    if (System.nanoTime() - current.sinceNanos() < openNanos) {
+                        return null;
+                    }
+                    // the probe never answered
+                    State reprobing = new State(Kind.HALF_OPEN, System.nanoTime());
+                    if (state.compareAndSet(current, reprobing)) {
+                        return reprobing;
+                    }
+                    break;
+                default:
+                    if (System.nanoTime() - current.sinceNanos() < openNanos) {
+                        return null;
+                    }
+                    State probing = new State(Kind.HALF_OPEN, System.nanoTime());
+                    if (state.compareAndSet(current, probing)) {
+                        return probing;
+                    }
+            }
+        }
+    }
+
+    private void onResult(State permitted, boolean cancelled, boolean failed, long nanos) {
+        boolean slow = nanos > slowCallNanos;
+        if (permitted.kind() == Kind.HALF_OPEN) {
+            if (cancelled) {
+                // no answer: the next call probes again right away
+                state.compareAndSet(permitted, new State(Kind.OPEN, System.nanoTime() - openNanos));
+            } else if (failed || slow) {
+                state.compareAndSet(permitted, new State(Kind.OPEN, System.nanoTime()));
+            } else {
+                resetWindow();
+                state.compareAndSet(permitted, new State(Kind.CLOSED, System.nanoTime()));
+            }
+            return;
+        }
+        if (cancelled) {
+            return;
+        }
+        record((failed ? FAILURE : SUCCESS) | (slow ? SLOW : 0));
+        // outcomes of calls sent before the breaker opened do not open it again
+        State current = state.get();
+        if (current == permitted && calls.get() >= windowSize
+                && (failures.get() >= failureRateThreshold * windowSize || slowCalls.get() >= slowCallRateThreshold * windowSize)) {
+            state.compareAndSet(permitted, new State(Kind.OPEN, System.nanoTime()));
+        }
+    }
+
+    private void record(int outcome) {
+        int slot = (int) (next.getAndIncrement() % windowSize);
+        int previous = window.getAndSet(slot, outcome);
+        if (previous == EMPTY) {
+            calls.incrementAndGet();
+        }
+        failures.addAndGet(bit(outcome, FAILURE) - bit(previous, FAILURE));
+        slowCalls.addAndGet(bit(outcome, SLOW) - bit(previous, SLOW));
+    }
+
+    private void resetWindow() {
+        for (int slot = 0; slot < windowSize; slot++) {
+            int previous = window.getAndSet(slot, EMPTY);
+            if (previous != EMPTY) {
+                calls.decrementAndGet();
+                failures.addAndGet(-bit(previous, FAILURE));
+                slowCalls.addAndGet(-bit(previous, SLOW));
+            }
+        }
+    }
+
+    private static int bit(int outcome, int flag) {
+        return (outcome & flag) != 0 ? 1 : 0;
+    }
+}
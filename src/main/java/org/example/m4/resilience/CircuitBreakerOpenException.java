@@ -0,0 +1,16 @@
+package org.example.m4.resilience;
+
+import org.example.m4.failure.StacklessException;
+
+/**
+ * the call was not sent, because the {@link CircuitBreaker} is open
+ * stackless: while the dependency is down, every call fails with one
+ */
+public class CircuitBreakerOpenException extends StacklessException {
+
+    private static final long serialVersionUID = 1L;
+
+    public CircuitBreakerOpenException(String message) {
+        super(message);
+    }
+}
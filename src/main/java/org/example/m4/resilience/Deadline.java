@@ -0,0 +1,146 @@
+package org.example.m4.resilience;
+
+import org.example.m4.timer.HashedWheelTimer;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * one time budget for a whole chain, instead of each stage picking its own static timeout
+ * <p>
+ * The clock starts with {@link #start()}, e.g. right before completing the dummy trigger of the chain.
+ * Every stage wrapped by the deadline sees the remaining budget:
+ * once it is exhausted, the stages that have not started yet are skipped and produce their fallback value,
+ * and the asynchronous stages in flight are completed with their fallback value when the budget runs out.
+ * A stage already running a blocking call is not interrupted, its result simply arrives too late to matter.
+ */
+public class Deadline {
+
+    private final long budgetNanos;
+    private volatile long deadlineNanos;
+    private volatile boolean started;
+    private final LongAdder fallbacks = new LongAdder();
+
+    private Deadline(long budgetNanos) {
+        this.budgetNanos = budgetNanos;
+    }
+
+    /**
+     * a deadline that has not started yet
+     */
+    public static Deadline of(Duration budget) {
+        if (budget.isNegative()) {
+            throw new IllegalArgumentException("budget must not be negative: " + budget);
+        }
+        return new Deadline(budget.toNanos());
+    }
+
+    /**
+     * a deadline that has started now
+     */
+    public static Deadline after(Duration budget) {
+        return of(budget).start();
+    }
+
+    /**
+     * starts the clock, the following calls have no effect
+     */
+    public synchronized Deadline start() {
+        if (!started) {
+            deadlineNanos = System.nanoTime() + budgetNanos;
+            started = true;
+        }
+        return this;
+    }
+
+    /**
+     * the remaining budget in nanoseconds, never negative; the whole budget while not started
+     */
+    public long remainingNanos() {
+        if (!started) {
+            return budgetNanos;
+        }
+        return Math.max(0, deadlineNanos - System.nanoTime());
+    }
+
+    public Duration remaining() {
+        return Duration.ofNanos(remainingNanos());
+    }
+
+    public boolean isExpired() {
+        return started && deadlineNanos - System.nanoTime() <= 0;
+    }
+
+    /**
+     * the number of stages that produced their fallback value, or were skipped, because the budget ran out
+     */
+    public long fallbackCount() {
+        return fallbacks.sum();
+    }
+
+    /**
+     * for thenApply(): runs the function only if there is budget left, otherwise returns the fallback
+     */
+    public <T, R> Function<T, R> apply(Function<? super T, ? extends R> function, R fallback) {
+        return value -> {
+            if (isExpired()) {
+                fallbacks.increment();
+                return fallback;
+            }
+            return function.apply(value);
+        };
+    }
+
+    /**
+     * for thenCompose(): starts the stage only if there is budget left,
+     * and completes a copy of it with the fallback if it is still running when the budget runs out
+     */
+    public <T, R> Function<T, CompletableFuture<R>> compose(Function<? super T, ? extends CompletionStage<R>> function,
+                                                            R fallback) {
+        return value -> {
+            if (isExpired()) {
+                fallbacks.increment();
+                return CompletableFuture.completedFuture(fallback);
+            }
+            return bound(function.apply(value).toCompletableFuture(), fallback);
+        };
+    }
+
+    /**
+     * for thenAccept(): runs the consumer only if there is budget left
+     */
+    public <T> Consumer<T> accept(Consumer<? super T> consumer) {
+        return value -> {
+            if (isExpired()) {
+                fallbacks.increment();
+                return;
+            }
+            consumer.accept(value);
+        };
+    }
+
+    /**
+     * a copy of the future, completed with the fallback if the future is not done when the budget runs out
+     * this replaces calling complete() / obtrudeValue() by hand; the future itself is left alone,
+     * it may be shared with other consumers, e.g. an in-flight future of a cache
+     */
+    public <T> CompletableFuture<T> bound(CompletableFuture<T> future, T fallback) {
+        CompletableFuture<T> bounded = future.copy();
+        if (bounded.isDone()) {
+            return bounded;
+        }
+        HashedWheelTimer.Timeout timer = HashedWheelTimer.shared().newTimeout(() -> {
+            // only counted when the fallback won
+            if (bounded.complete(fallback)) {
+                fallbacks.increment();
+            }
+        }, remainingNanos(), TimeUnit.NANOSECONDS);
+        bounded.whenComplete((value, exception) -> timer.cancel());
+        return bounded;
+    }
+}
@@ -0,0 +1,227 @@
+package org.example.m4.resilience;
+
+import org.example.m4.timer.HashedWheelTimer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * hedged requests against tail latency
+ * <p>
+ * The primary attempt is sent first. If it has not succeeded after the hedge delay,
+ * a backup attempt is sent, and the first one to succeed wins. The loser is cancelled right away.
+ * If the primary fails before the delay, the backup is sent immediately.
+ * <p>
+ * The hedge delay is a percentile (e.g. p95) of the latencies of the recent primary attempts,
+ * kept between a minimum and a maximum, so only the slowest few percent of the requests are hedged.
+ * Until enough latencies are recorded, the maximum delay is used.
+ * <p>
+ * Only the primaries are sampled, whichever attempt wins: a primary cancelled because the backup won
+ * is recorded with the time it had been running, a lower bound of its latency. Recording only the winners
+ * would drop every latency above the hedge delay, and the delay would keep falling.
+ * <p>
+ * Unlike acceptEither() / anyOf() in AsyncExampleMultiTasks, the losers do not keep running:
+ * they are cancelled with cancel(true), and {@link #hedge(Callable, ExecutorService)} interrupts the thread running them.
+ */
+public class Hedger {
+
+    private final LatencyTracker latencies;
+    private final long minDelayNanos;
+    private final long maxDelayNanos;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder backupWins = new LongAdder();
+
+    /**
+     * @param percentile     the percentile of recent latencies after which the backup is sent, e.g. 95
+     * @param minDelayMillis the hedge delay never goes below this, so a fast backend is not hedged all the time
+     * @param maxDelayMillis the hedge delay never goes above this, also used before enough latencies are known
+     */
+    public Hedger(double percentile, long minDelayMillis, long maxDelayMillis) {
+        if (minDelayMillis < 0 || maxDelayMillis < minDelayMillis) {
+            throw new IllegalArgumentException("Invalid delay bounds: " + minDelayMillis + ", " + maxDelayMillis);
+        }
+        this.latencies = new LatencyTracker(percentile, 1024);
+        this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(minDelayMillis);
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+    }
+
+    /**
+     * hedges attempts returning CompletableFutures
+     * the loser is cancelled with cancel(true), which stops it only if its future propagates the cancellation,
+     * e.g. HttpClient.sendAsync() aborts the exchange
+     */
+    public <T> CompletableFuture<T> hedge(Supplier<? extends CompletableFuture<T>> attempt) {
+        requests.increment();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Attempts<T> attempts = new Attempts<>(result);
+
+        CompletableFuture<T> primary = start(attempt, attempts, false);
+
+        // the backup is sent after the delay, or as soon as the primary fails
+        CompletableFuture<Void> sendBackup = new CompletableFuture<>();
+        HashedWheelTimer.Timeout timer = HashedWheelTimer.shared()
+                .newTimeout(() -> sendBackup.complete(null), hedgeDelayNanos(), TimeUnit.NANOSECONDS);
+        primary.whenComplete((value, exception) -> {
+            if (exception != null) {
+                sendBackup.complete(null);
+            }
+        });
+        sendBackup.thenRun(() -> {
+            if (attempts.trySendBackup()) {
+                hedges.increment();
+                start(attempt, attempts, true);
+            }
+        });
+
+        // cancelling the result cancels whatever is still running, and a backup not sent yet
+        result.whenComplete((value, exception) -> {
+            timer.cancel();
+            attempts.cancelAll();
+        });
+        return result;
+    }
+
+    /**
+     * hedges a blocking task, each attempt runs on the executor
+     * the loser is cancelled with Future.cancel(true), which interrupts the thread running it
+     */
+    public <T> CompletableFuture<T> hedge(Callable<T> task, ExecutorService executor) {
+        return hedge(() -> {
+            CompletableFuture<T> attempt = new CompletableFuture<>();
+            Future<?> running = executor.submit(() -> {
+                try {
+                    attempt.complete(task.call());
+                } catch (Throwable e) {
+                    attempt.completeExceptionally(e);
+                }
+            });
+            attempt.whenComplete((value, exception) -> {
+                if (attempt.isCancelled()) {
+                    running.cancel(true);
+                }
+            });
+            return attempt;
+        });
+    }
+
+    /**
+     * the delay after which a backup would be sent right now
+     */
+    public long hedgeDelayMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(hedgeDelayNanos());
+    }
+
+    public long requestCount() {
+        return requests.sum();
+    }
+
+    /**
+     * the number of backups sent
+     */
+    public long hedgeCount() {
+        return hedges.sum();
+    }
+
+    /**
+     * the number of requests won by the backup
+     */
+    public long backupWinCount() {
+        return backupWins.sum();
+    }
+
+    private long hedgeDelayNanos() {
+        long percentile = latencies.percentile();
+        if (percentile < 0) {
+            return maxDelayNanos;
+        }
+        return Math.min(maxDelayNanos, Math.max(minDelayNanos, percentile));
+    }
+
+    private <T> CompletableFuture<T> start(Supplier<? extends CompletableFuture<T>> attempt,
+                                           Attempts<T> attempts, boolean backup) {
+        long start = System.nanoTime();
+        CompletableFuture<T> future;
+        try {
+            future = attempt.get();
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        attempts.add(future);
+        future.whenComplete((value, exception) -> {
+            if (!backup && (exception == null || lostToBackup(exception, attempts.result))) {
+                latencies.record(System.nanoTime() - start);
+            }
+            if (exception == null) {
+                if (attempts.result.complete(value) && backup) {
+                    backupWins.increment();
+                }
+            } else if (attempts.failed()) {
+                attempts.result.completeExceptionally(exception);
+            }
+        });
+        return future;
+    }
+
+    // the primary was cancelled because the request succeeded, i.e. the backup won
+    private static boolean lostToBackup(Throwable exception, CompletableFuture<?> result) {
+        return exception instanceof CancellationException && result.isDone() && !result.isCompletedExceptionally();
+    }
+
+    /**
+     * the attempts of one request
+     */
+    private static final class Attempts<T> {
+        final CompletableFuture<T> result;
+        private final List<CompletableFuture<T>> futures = new ArrayList<>(2);
+        private int launched = 1;
+        private int failures;
+        private boolean backupSent;
+
+        Attempts(CompletableFuture<T> result) {
+            this.result = result;
+        }
+
+        synchronized void add(CompletableFuture<T> future) {
+            futures.add(future);
+            if (result.isDone()) {
+                future.cancel(true);
+            }
+        }
+
+        /**
+         * @return true if the backup has to be sent now, i.e. it was not sent yet and nothing succeeded so far
+         */
+        synchronized boolean trySendBackup() {
+            if (backupSent || result.isDone()) {
+                return false;
+            }
+            backupSent = true;
+            launched++;
+            return true;
+        }
+
+        /**
+         * @return true if this was the last attempt that could have succeeded
+         */
+        synchronized boolean failed() {
+            failures++;
+            return backupSent && failures == launched;
+        }
+
+        synchronized void cancelAll() {
+            for (CompletableFuture<T> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package org.example.m4.resilience;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * keeps the last latencies in a ring buffer, and a percentile of them recomputed every few samples
+ * so that reading the percentile on the hot path is a single volatile read
+ */
+class LatencyTracker {
+
+    private static final int RECOMPUTE_EVERY = 64;
+
+    private final double percentile;
+    private final AtomicLongArray samples;
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicBoolean recomputing = new AtomicBoolean();
+    private volatile long currentPercentile = -1;
+
+    /**
+     * @param percentile between 0 and 100, e.g. 95
+     * @param window     the number of recent samples the percentile is computed over
+     */
+    LatencyTracker(double percentile, int window) {
+        if (percentile <= 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be in (0, 100]: " + percentile);
+        }
+        this.percentile = percentile;
+        this.samples = new AtomicLongArray(window);
+    }
+
+    void record(long nanos) {
+        long count = recorded.getAndIncrement();
+        samples.set((int) (count % samples.length()), nanos);
+        if ((count + 1) % RECOMPUTE_EVERY == 0 && recomputing.compareAndSet(false, true)) {
+            try {
+                recompute(Math.min(count + 1, samples.length()));
+            } finally {
+                recomputing.set(false);
+            }
+        }
+    }
+
+    /**
+     * the percentile in nanoseconds, or -1 while fewer than 64 samples were recorded
+     */
+    long percentile() {
+        return currentPercentile;
+    }
+
+    private void recompute(long size) {
+        long[] sorted = new long[(int) size];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = samples.get(i);
+        }
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        currentPercentile = sorted[Math.max(0, rank)];
+    }
+}
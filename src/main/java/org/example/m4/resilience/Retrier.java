@@ -0,0 +1,163 @@
+package org.example.m4.resilience;
+
+import org.example.m4.failure.Failures;
+import org.example.m4.timer.HashedWheelTimer;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * retries a failed attempt after an exponential backoff with full jitter,
+ * instead of recovering right away with exceptionally() like in AsyncException
+ * <p>
+ * the n-th retry waits a random delay between 0 and min(maxDelay, baseDelay * 2^(n-1)):
+ * the jitter spreads the retries of the callers that failed together, instead of sending them back together.
+ * The delay is a timer, no thread is blocked while waiting.
+ * <p>
+ * every retry is withdrawn from a {@link RetryBudget}: when a backend is down, the retries stop
+ * at a share of the traffic instead of multiplying it by maxAttempts.
+ * <p>
+ * cancelling the result cancels the running attempt, and the retry not sent yet
+ */
+public class Retrier {
+
+    private final int maxAttempts;
+    private final long baseDelayNanos;
+    private final long maxDelayNanos;
+    private final RetryBudget budget;
+    private final Predicate<Throwable> retryable;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder attempts = new LongAdder();
+    private final LongAdder successes = new LongAdder();
+    private final LongAdder exhausted = new LongAdder();
+    private final LongAdder nonRetryable = new LongAdder();
+    private final LongAdder budgetRejections = new LongAdder();
+
+    /**
+     * retries any failure but a cancellation
+     */
+    public Retrier(int maxAttempts, long baseDelayMillis, long maxDelayMillis, RetryBudget budget) {
+        this(maxAttempts, baseDelayMillis, maxDelayMillis, budget, exception -> !(exception instanceof CancellationException));
+    }
+
+    /**
+     * @param maxAttempts     the attempts of a request, the first one included
+     * @param baseDelayMillis the upper bound of the first backoff, doubled on each retry
+     * @param maxDelayMillis  the upper bound of any backoff
+     * @param budget          shared by the Retriers of the same backend
+     * @param retryable       tells the transient failures, given the failure unwrapped from its CompletionException
+     */
+    public Retrier(int maxAttempts, long baseDelayMillis, long maxDelayMillis, RetryBudget budget,
+                   Predicate<Throwable> retryable) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be positive: " + maxAttempts);
+        }
+        if (baseDelayMillis < 0 || maxDelayMillis < baseDelayMillis) {
+            throw new IllegalArgumentException("Invalid delay bounds: " + baseDelayMillis + ", " + maxDelayMillis);
+        }
+        this.maxAttempts = maxAttempts;
+        this.baseDelayNanos = TimeUnit.MILLISECONDS.toNanos(baseDelayMillis);
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.budget = budget;
+        this.retryable = retryable;
+    }
+
+    /**
+     * the result of the first successful attempt, or the failure of the last one
+     * the supplier is called once per attempt
+     */
+    public <T> CompletableFuture<T> retry(Supplier<? extends CompletionStage<T>> attempt) {
+        requests.increment();
+        budget.deposit();
+        Request<T> request = new Request<>(attempt);
+        request.attempt(1);
+        return request.result;
+    }
+
+    public RetryStats stats() {
+        return new RetryStats(requests.sum(), attempts.sum(), successes.sum(),
+                exhausted.sum(), nonRetryable.sum(), budgetRejections.sum());
+    }
+
+    /**
+     * a random delay up to the backoff of the retry, the first retry being 1
+     */
+    long backoffNanos(int retry) {
+        int shift = Math.min(retry - 1, 30);
+        long bound = baseDelayNanos > (maxDelayNanos >> shift) ? maxDelayNanos : baseDelayNanos << shift;
+        return ThreadLocalRandom.current().nextLong(bound + 1);
+    }
+
+    private final class Request<T> {
+        final Supplier<? extends CompletionStage<T>> supplier;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        // what to cancel when the result is cancelled: the running attempt, or the timer of the next one
+        volatile CompletableFuture<T> running;
+        volatile HashedWheelTimer.Timeout backoff;
+
+        Request(Supplier<? extends CompletionStage<T>> supplier) {
+            this.supplier = supplier;
+            result.whenComplete((value, exception) -> {
+                if (result.isCancelled()) {
+                    HashedWheelTimer.Timeout timeout = backoff;
+                    if (timeout != null) {
+                        timeout.cancel();
+                    }
+                    CompletableFuture<T> current = running;
+                    if (current != null) {
+                        current.cancel(true);
+                    }
+                }
+            });
+        }
+
+        void attempt(int number) {
+            if (result.isDone()) {
+                return;
+            }
+            attempts.increment();
+            CompletableFuture<T> current;
+            try {
+                current = supplier.get().toCompletableFuture();
+            } catch (RuntimeException e) {
+                current = CompletableFuture.failedFuture(e);
+            }
+            running = current;
+            current.whenComplete((value, exception) -> {
+                if (exception == null) {
+                    if (result.complete(value)) {
+                        successes.increment();
+                    }
+                } else {
+                    failed(number, Failures.unwrap(exception));
+                }
+            });
+        }
+
+        private void failed(int number, Throwable exception) {
+            if (result.isDone()) {
+                return;
+            }
+            if (!retryable.test(exception)) {
+                nonRetryable.increment();
+                result.completeExceptionally(exception);
+            } else if (number >= maxAttempts) {
+                exhausted.increment();
+                result.completeExceptionally(exception);
+            } else if (!budget.tryWithdraw()) {
+                budgetRejections.increment();
+                result.completeExceptionally(exception);
+            } else {
+                backoff = HashedWheelTimer.shared()
+                        .newTimeout(() -> attempt(number + 1), backoffNanos(number), TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+}
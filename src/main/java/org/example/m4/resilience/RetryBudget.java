@@ -0,0 +1,101 @@
+package org.example.m4.resilience;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * caps the retries to a share of the traffic, so retries cannot multiply the load on a backend that is down
+ * <p>
+ * every request deposits "ratio" of a token, every retry withdraws a whole one: with a ratio of 0.1, at most
+ * one retry per 10 requests on average, whatever the failure rate. On top of that, minRetriesPerSecond tokens
+ * are earned over time, so a service with little traffic can still retry.
+ * The balance is capped at maxTokens, so a long calm period does not store a burst of retries.
+ * <p>
+ * shared by all the callers of a backend, e.g. by all the {@link Retrier}s in front of it
+ */
+public class RetryBudget {
+
+    // balances are in thousandths of a token
+    private static final long TOKEN = 1000;
+
+    private final long deposit;
+    private final long capacity;
+    private final double earnedPerNano;
+    private final AtomicLong balance = new AtomicLong();
+    private final AtomicLong lastEarned = new AtomicLong(System.nanoTime());
+
+    /**
+     * with room for 1000 retries
+     */
+    public RetryBudget(double ratio, int minRetriesPerSecond) {
+        this(ratio, minRetriesPerSecond, 1000);
+    }
+
+    /**
+     * @param ratio               the retries allowed per request, e.g. 0.1 for 10%
+     * @param minRetriesPerSecond the retries allowed per second, regardless of the traffic
+     * @param maxTokens           the most retries that can be saved for a burst
+     */
+    public RetryBudget(double ratio, int minRetriesPerSecond, int maxTokens) {
+        if (ratio < 0 || minRetriesPerSecond < 0 || maxTokens < 1) {
+            throw new IllegalArgumentException("Invalid retry budget: " + ratio + ", " + minRetriesPerSecond + ", " + maxTokens);
+        }
+        this.deposit = Math.round(ratio * TOKEN);
+        this.capacity = maxTokens * TOKEN;
+        this.earnedPerNano = minRetriesPerSecond * TOKEN / 1e9;
+    }
+
+    /**
+     * a budget that never runs out
+     */
+    public static RetryBudget unlimited() {
+        return new RetryBudget(Integer.MAX_VALUE, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * called once per request, before its first attempt
+     */
+    public void deposit() {
+        add(deposit);
+    }
+
+    /**
+     * called before each retry, false when the budget is exhausted and the retry must not be sent
+     */
+    public boolean tryWithdraw() {
+        earn();
+        long current;
+        do {
+            current = balance.get();
+            if (current < TOKEN) {
+                return false;
+            }
+        } while (!balance.compareAndSet(current, current - TOKEN));
+        return true;
+    }
+
+    /**
+     * the number of retries that could be sent right now
+     */
+    public long available() {
+        earn();
+        return balance.get() / TOKEN;
+    }
+
+    // adds the tokens earned by time since the last call
+    private void earn() {
+        if (earnedPerNano == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        long last = lastEarned.get();
+        long earned = (long) ((now - last) * earnedPerNano);
+        // only one of the concurrent callers adds the tokens of this period
+        if (earned > 0 && lastEarned.compareAndSet(last, now)) {
+            add(earned);
+        }
+    }
+
+    private void add(long amount) {
+        balance.accumulateAndGet(amount, (current, added) -> Math.min(capacity, current + added));
+    }
+}
@@ -0,0 +1,23 @@
+package org.example.m4.resilience;
+
+/**
+ * a snapshot of the counters of a {@link Retrier}
+ *
+ * @param requestCount         the calls to retry()
+ * @param attemptCount         the attempts sent, first attempts included
+ * @param successCount         the requests that succeeded, on any attempt
+ * @param exhaustedCount       the requests given up after the last attempt failed
+ * @param nonRetryableCount    the requests given up because the failure was not retryable
+ * @param budgetRejectionCount the requests given up because the retry budget was exhausted
+ */
+public record RetryStats(long requestCount, long attemptCount, long successCount,
+                         long exhaustedCount, long nonRetryableCount, long budgetRejectionCount) {
+
+    public long retryCount() {
+        return attemptCount - requestCount;
+    }
+
+    public long giveUpCount() {
+        return exhaustedCount + nonRetryableCount + budgetRejectionCount;
+    }
+}
@@ -0,0 +1,96 @@
+package org.example.m4.structured;
+
+import org.example.m4.cancel.CancellableFuture;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * the {@link FanOut} of AsyncExampleMultiTasks.example1, with CompletableFutures:
+ * every branch is a CancellableFuture on the executor, so the branch that is no longer needed can be interrupted
+ */
+public class CompletableFutureFanOut implements FanOut {
+
+    private final Executor executor;
+
+    public CompletableFutureFanOut(Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public <T, A, B, R> CompletableFuture<R> all(Supplier<? extends T> source,
+                                                 Function<? super T, ? extends A> left,
+                                                 Function<? super T, ? extends B> right,
+                                                 BiFunction<? super A, ? super B, ? extends R> combiner) {
+        return CancellableFuture.<T>supplyAsync(source::get, executor).thenCompose(value -> {
+            CancellableFuture<A> leftCf = CancellableFuture.supplyAsync(() -> left.apply(value), executor);
+            CancellableFuture<B> rightCf = CancellableFuture.supplyAsync(() -> right.apply(value), executor);
+
+            // the first failure wins, thenCombine() alone would wait for both and may report the cancellation instead
+            CancellableFuture<R> result = new CancellableFuture<>();
+            leftCf.whenComplete((a, exception) -> {
+                if (exception != null) {
+                    result.completeExceptionally(exception);
+                    rightCf.cancel(true);
+                }
+            });
+            rightCf.whenComplete((b, exception) -> {
+                if (exception != null) {
+                    result.completeExceptionally(exception);
+                    leftCf.cancel(true);
+                }
+            });
+            leftCf.thenCombine(rightCf, combiner).whenComplete((combined, exception) -> {
+                if (exception == null) {
+                    result.complete(combined);
+                } else {
+                    result.completeExceptionally(exception);
+                }
+            });
+            // cancelling the result cancels both branches
+            result.whenComplete((combined, exception) -> {
+                if (result.isCancelled()) {
+                    leftCf.cancel(true);
+                    rightCf.cancel(true);
+                }
+            });
+            return result;
+        });
+    }
+
+    @Override
+    public <T, R> CompletableFuture<R> any(Supplier<? extends T> source,
+                                           List<? extends Function<? super T, ? extends R>> alternatives) {
+        // with no alternative the result could never complete
+        if (alternatives.isEmpty()) {
+            throw new IllegalArgumentException("No alternatives to run");
+        }
+        return CancellableFuture.<T>supplyAsync(source::get, executor).thenCompose(value -> {
+            List<CancellableFuture<R>> forks = new ArrayList<>(alternatives.size());
+            for (Function<? super T, ? extends R> alternative : alternatives) {
+                forks.add(CancellableFuture.supplyAsync(() -> alternative.apply(value), executor));
+            }
+
+            CancellableFuture<R> result = new CancellableFuture<>();
+            AtomicInteger failures = new AtomicInteger();
+            for (CancellableFuture<R> fork : forks) {
+                fork.whenComplete((r, exception) -> {
+                    if (exception == null) {
+                        result.complete(r);
+                    } else if (failures.incrementAndGet() == forks.size()) {
+                        result.completeExceptionally(exception);
+                    }
+                });
+            }
+            // the first success, a total failure or a cancellation: the forks still running are not needed any more
+            result.whenComplete((r, exception) -> forks.forEach(fork -> fork.cancel(true)));
+            return result;
+        });
+    }
+}
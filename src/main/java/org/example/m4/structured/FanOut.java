@@ -0,0 +1,38 @@
+package org.example.m4.structured;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * fans out from one supplied value, like fetchUser / fetchEmails from the ids in AsyncExampleMultiTasks.example1
+ * the branches are plain blocking functions, the implementation decides how they run concurrently
+ * <ul>
+ *     <li>{@link CompletableFutureFanOut}: CompletableFutures on an executor</li>
+ *     <li>{@link StructuredFanOut}: a StructuredTaskScope on virtual threads</li>
+ * </ul>
+ * In both, a branch that is no longer needed is interrupted, and cancel(true) on the result stops everything.
+ */
+public interface FanOut {
+
+    /**
+     * runs both branches on the supplied value and combines their results
+     * as soon as one branch fails, the other is interrupted and the result fails (shutdown-on-failure)
+     */
+    <T, A, B, R> CompletableFuture<R> all(Supplier<? extends T> source,
+                                          Function<? super T, ? extends A> left,
+                                          Function<? super T, ? extends B> right,
+                                          BiFunction<? super A, ? super B, ? extends R> combiner);
+
+    /**
+     * runs every alternative on the supplied value and returns the first successful result
+     * as soon as one succeeds, the others are interrupted (shutdown-on-success)
+     * the result fails only if all the alternatives fail
+     *
+     * @throws IllegalArgumentException if there is no alternative, before anything runs
+     */
+    <T, R> CompletableFuture<R> any(Supplier<? extends T> source,
+                                    List<? extends Function<? super T, ? extends R>> alternatives);
+}
@@ -0,0 +1,74 @@
+package org.example.m4.structured;
+
+import org.example.m4.cancel.CancellableFuture;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.StructuredTaskScope;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * the {@link FanOut} with a StructuredTaskScope: each call runs in its own virtual thread,
+ * which forks the branches as virtual threads of the scope and joins them
+ * the scope guarantees that no branch outlives the call, whatever happens
+ * <p>
+ * StructuredTaskScope is a preview API in Java 21: this class needs --enable-preview to run.
+ */
+public class StructuredFanOut implements FanOut {
+
+    // each call gets its own virtual thread to own the scope
+    private static final Executor OWNER = task -> Thread.ofVirtual().name("scope-owner").start(task);
+
+    @Override
+    public <T, A, B, R> CompletableFuture<R> all(Supplier<? extends T> source,
+                                                 Function<? super T, ? extends A> left,
+                                                 Function<? super T, ? extends B> right,
+                                                 BiFunction<? super A, ? super B, ? extends R> combiner) {
+        return CancellableFuture.supplyAsync(() -> {
+            try (var scope = new StructuredTaskScope.ShutdownOnFailure()) {
+                T value = source.get();
+                StructuredTaskScope.Subtask<? extends A> leftTask = scope.fork(() -> left.apply(value));
+                StructuredTaskScope.Subtask<? extends B> rightTask = scope.fork(() -> right.apply(value));
+
+                // the first failure shuts the scope down, which interrupts the other branch
+                scope.join().throwIfFailed();
+                return combiner.apply(leftTask.get(), rightTask.get());
+            } catch (ExecutionException e) {
+                throw new CompletionException(e.getCause());
+            } catch (InterruptedException e) {
+                // the result was cancelled, closing the scope has interrupted the branches as well
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+        }, OWNER);
+    }
+
+    @Override
+    public <T, R> CompletableFuture<R> any(Supplier<? extends T> source,
+                                           List<? extends Function<? super T, ? extends R>> alternatives) {
+        // with no alternative the result could never complete
+        if (alternatives.isEmpty()) {
+            throw new IllegalArgumentException("No alternatives to run");
+        }
+        return CancellableFuture.supplyAsync(() -> {
+            try (var scope = new StructuredTaskScope.ShutdownOnSuccess<R>()) {
+                T value = source.get();
+                for (Function<? super T, ? extends R> alternative : alternatives) {
+                    scope.fork(() -> alternative.apply(value));
+                }
+
+                // the first success shuts the scope down, which interrupts the others
+                scope.join();
+                return scope.result(CompletionException::new);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+        }, OWNER);
+    }
+}
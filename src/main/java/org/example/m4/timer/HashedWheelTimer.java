@@ -0,0 +1,402 @@
+package org.example.m4.timer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * a hashed-wheel timer: non-blocking delays and timeouts as CompletableFutures
+ * <p>
+ * Instead of a private sleep() pinning a pool thread for the whole delay, a delay is an entry in a wheel of buckets,
+ * and one worker thread advances the wheel every tick, expiring the entries of the current bucket.
+ * Scheduling and cancelling are O(1): they go through lock-free queues, the worker files them into the wheel.
+ * Unlike CompletableFuture.delayedExecutor() / orTimeout(), which go through one ScheduledThreadPoolExecutor
+ * and its O(log n) heap, millions of timers can be pending at the same time.
+ * <p>
+ * The precision is one tick. The expired tasks run on the completion executor, never on the worker,
+ * so a slow task cannot delay the wheel.
+ * <p>
+ * The worker is started by the first timeout, not by the constructor.
+ */
+public class HashedWheelTimer {
+
+    private static final int MAX_TRANSFERS_PER_TICK = 100_000;
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Executor executor;
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final AtomicLong pendingTimeouts = new AtomicLong();
+    // set once by start(), startTime is written before the worker is published
+    private volatile Thread worker;
+    private long startTime;
+    private volatile boolean stopped;
+
+    /**
+     * @param tickDuration  the precision of the timer
+     * @param ticksPerWheel the number of buckets, rounded up to a power of two
+     * @param executor      runs the expired tasks and completes the futures
+     */
+    public HashedWheelTimer(long tickDuration, TimeUnit unit, int ticksPerWheel, Executor executor) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("tickDuration must be positive: " + tickDuration);
+        }
+        if (ticksPerWheel <= 0) {
+            throw new IllegalArgumentException("ticksPerWheel must be positive: " + ticksPerWheel);
+        }
+        this.tickNanos = unit.toNanos(tickDuration);
+        int size = Integer.highestOneBit(ticksPerWheel - 1 | 1) << 1;
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+        this.executor = executor;
+    }
+
+    /**
+     * the process-wide timer: 1 ms ticks, 1024 buckets, completing on the common pool
+     */
+    public static HashedWheelTimer shared() {
+        return Shared.INSTANCE;
+    }
+
+    private static final class Shared {
+        static final HashedWheelTimer INSTANCE =
+                new HashedWheelTimer(1, TimeUnit.MILLISECONDS, 1024, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * runs the task on the completion executor once the delay has elapsed
+     */
+    public Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+        return newTimeout(task, null, delay, unit);
+    }
+
+    // onStop completes the future of the timeout when the timer is stopped before it expires
+    private Timeout newTimeout(Runnable task, Runnable onStop, long delay, TimeUnit unit) {
+        if (stopped) {
+            throw new IllegalStateException("Timer stopped");
+        }
+        if (worker == null) {
+            start();
+        }
+        long deadline = System.nanoTime() - startTime + Math.max(0, unit.toNanos(delay));
+        Timeout timeout = new Timeout(task, onStop, deadline);
+        pendingTimeouts.incrementAndGet();
+        pending.add(timeout);
+        // stopped in between: unless stop() already took it, it would never expire
+        if (stopped && pending.remove(timeout)) {
+            pendingTimeouts.decrementAndGet();
+            throw new IllegalStateException("Timer stopped");
+        }
+        return timeout;
+    }
+
+    /**
+     * a stage completing after the delay, without blocking any thread in the meantime
+     * cancelling it cancels the timer
+     */
+    public CompletableFuture<Void> delay(long delay, TimeUnit unit) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        Timeout timeout = newTimeout(() -> future.complete(null), () -> future.cancel(false), delay, unit);
+        future.whenComplete((value, exception) -> timeout.cancel());
+        return future;
+    }
+
+    public CompletableFuture<Void> delay(long millis) {
+        return delay(millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * like CompletableFuture.delayedExecutor(), for the *Async methods
+     */
+    public Executor delayedExecutor(long delay, TimeUnit unit) {
+        return task -> newTimeout(task, delay, unit);
+    }
+
+    /**
+     * like CompletableFuture.orTimeout(): completes the future with a TimeoutException if it is not done in time
+     * the timer is cancelled as soon as the future completes
+     */
+    public <T> CompletableFuture<T> orTimeout(CompletableFuture<T> future, long timeout, TimeUnit unit) {
+        if (!future.isDone()) {
+            Timeout timer = newTimeout(() -> future.completeExceptionally(new TimeoutException()),
+                    () -> future.completeExceptionally(new CancellationException("Timer stopped")), timeout, unit);
+            future.whenComplete((value, exception) -> timer.cancel());
+        }
+        return future;
+    }
+
+    /**
+     * like CompletableFuture.completeOnTimeout(): completes the future with the value if it is not done in time
+     * the timer is cancelled as soon as the future completes
+     */
+    public <T> CompletableFuture<T> completeOnTimeout(CompletableFuture<T> future, T value, long timeout, TimeUnit unit) {
+        if (!future.isDone()) {
+            Timeout timer = newTimeout(() -> future.complete(value),
+                    () -> future.completeExceptionally(new CancellationException("Timer stopped")), timeout, unit);
+            future.whenComplete((result, exception) -> timer.cancel());
+        }
+        return future;
+    }
+
+    /**
+     * the number of timeouts scheduled, and neither expired nor cancelled
+     */
+    public long pendingTimeouts() {
+        return pendingTimeouts.get();
+    }
+
+    /**
+     * stops the worker and cancels the timeouts not expired yet, like Netty's stop()
+     * the futures of {@link #delay(long, TimeUnit)} are cancelled, the ones of {@link #orTimeout} and
+     * {@link #completeOnTimeout} are completed with a CancellationException, so none of them stays pending
+     *
+     * @return the timeouts cancelled, e.g. to run the tasks of {@link #newTimeout} some other way
+     */
+    public List<Timeout> stop() {
+        stopped = true;
+        Thread thread;
+        synchronized (this) {
+            thread = worker;
+        }
+        if (thread != null) {
+            if (thread == Thread.currentThread()) {
+                throw new IllegalStateException("stop() called from the timer worker");
+            }
+            joinUninterruptibly(thread);
+        }
+
+        // the worker is gone, its buckets can be read from here
+        List<Timeout> unprocessed = new ArrayList<>();
+        for (Bucket bucket : wheel) {
+            bucket.drainTo(unprocessed);
+        }
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            unprocessed.add(timeout);
+        }
+        unprocessed.removeIf(t -> !t.cancel());
+        unprocessed.forEach(Timeout::stopped);
+        cancelled.clear();
+        return unprocessed;
+    }
+
+    private synchronized void start() {
+        if (worker == null && !stopped) {
+            startTime = System.nanoTime();
+            Thread thread = new Thread(this::run, "hashed-wheel-timer");
+            thread.setDaemon(true);
+            worker = thread;
+            thread.start();
+        }
+    }
+
+    private static void joinUninterruptibly(Thread thread) {
+        boolean interrupted = false;
+        while (true) {
+            thread.interrupt();
+            try {
+                thread.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        long tick = 0;
+        while (!stopped) {
+            long deadline = waitForNextTick(tick);
+            if (deadline < 0) {
+                break;
+            }
+            removeCancelled();
+            transferPending(tick);
+            wheel[(int) (tick & mask)].expire(deadline);
+            tick++;
+        }
+    }
+
+    /**
+     * @return the time of the tick relative to the start, or -1 when stopped
+     */
+    private long waitForNextTick(long tick) {
+        long deadline = tickNanos * (tick + 1);
+        while (true) {
+            long remaining = deadline - (System.nanoTime() - startTime);
+            if (remaining <= 0) {
+                return deadline;
+            }
+            if (stopped) {
+                return -1;
+            }
+            LockSupport.parkNanos(this, remaining);
+        }
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    private void transferPending(long tick) {
+        for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+            Timeout timeout = pending.poll();
+            if (timeout == null) {
+                return;
+            }
+            if (timeout.state.get() == Timeout.CANCELLED) {
+                continue;
+            }
+            long expiryTick = timeout.deadline / tickNanos;
+            timeout.remainingRounds = (expiryTick - tick) / wheel.length;
+            // a timeout already late goes into the current bucket
+            long bucketTick = Math.max(expiryTick, tick);
+            wheel[(int) (bucketTick & mask)].add(timeout);
+        }
+    }
+
+    /**
+     * a scheduled task, which can be cancelled
+     */
+    public final class Timeout {
+        private static final int INIT = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final Runnable task;
+        private final Runnable onStop;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(INIT);
+        // the fields below are only used by the worker
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(Runnable task, Runnable onStop, long deadline) {
+            this.task = task;
+            this.onStop = onStop;
+            this.deadline = deadline;
+        }
+
+        /**
+         * @return false if the timeout has already expired or been cancelled
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(INIT, CANCELLED)) {
+                return false;
+            }
+            pendingTimeouts.decrementAndGet();
+            cancelled.add(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+
+        // cancelled by stop()
+        private void stopped() {
+            if (onStop != null) {
+                onStop.run();
+            }
+        }
+
+        private void expire() {
+            if (!state.compareAndSet(INIT, EXPIRED)) {
+                return;
+            }
+            pendingTimeouts.decrementAndGet();
+            executor.execute(task);
+        }
+    }
+
+    /**
+     * a doubly-linked list of timeouts, only used by the worker
+     */
+    private final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void expire(long deadline) {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                // a timeout is filed in the bucket of its own tick, so its deadline has passed once its rounds are over
+                if (timeout.remainingRounds <= 0 && timeout.deadline <= deadline) {
+                    remove(timeout);
+                    timeout.expire();
+                } else if (!timeout.isCancelled()) {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        void drainTo(List<Timeout> timeouts) {
+            while (head != null) {
+                Timeout timeout = head;
+                remove(timeout);
+                timeouts.add(timeout);
+            }
+        }
+
+        void remove(Timeout timeout) {
+            // already removed, e.g. expired and cancelled at the same time
+            if (timeout.bucket != this) {
+                return;
+            }
+            if (timeout.prev != null) {
+                timeout.prev.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            } else {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+}
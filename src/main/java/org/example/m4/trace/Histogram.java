@@ -0,0 +1,79 @@
+package org.example.m4.trace;
+
+/**
+ * a log-linear latency histogram in the style of HdrHistogram:
+ * exact below 64 ns, then 32 sub-buckets per power of two (about 3% precision), up to 2^41 ns (36 minutes),
+ * longer values are recorded as 2^41 - 1
+ * recording is an index computation and one increment, nothing is allocated
+ * not thread-safe: guarded by its {@link RecorderStripe}
+ */
+final class Histogram {
+
+    private static final int MAX_SHIFT = 35;
+    private static final long MAX_VALUE = (1L << (MAX_SHIFT + 6)) - 1;
+    static final int SIZE = 32 * MAX_SHIFT + 64;
+
+    private final long[] counts = new long[SIZE];
+    private long count;
+    private long max;
+
+    void record(long nanos) {
+        long value = Math.min(Math.max(0, nanos), MAX_VALUE);
+        counts[index(value)]++;
+        count++;
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    void addTo(Histogram total) {
+        for (int i = 0; i < SIZE; i++) {
+            total.counts[i] += counts[i];
+        }
+        total.count += count;
+        total.max = Math.max(total.max, max);
+    }
+
+    long count() {
+        return count;
+    }
+
+    long max() {
+        return max;
+    }
+
+    /**
+     * the lower bound of the bucket holding the percentile, e.g. 99 for the p99
+     */
+    long percentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < SIZE; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return lowerBound(i);
+            }
+        }
+        return max;
+    }
+
+    static int index(long value) {
+        if (value < 64) {
+            return (int) value;
+        }
+        // keep the 6 most significant bits: the top one selects the power of two, the 5 others the sub-bucket
+        int shift = 63 - Long.numberOfLeadingZeros(value) - 5;
+        return 32 * shift + (int) (value >>> shift);
+    }
+
+    static long lowerBound(int index) {
+        if (index < 64) {
+            return index;
+        }
+        int shift = index / 32 - 1;
+        return (long) (index % 32 + 32) << shift;
+    }
+}
@@ -0,0 +1,53 @@
+package org.example.m4.trace;
+
+import java.util.Arrays;
+
+/**
+ * the statistics recorded by the threads hashed to this stripe, indexed by stage id
+ * there is a fixed number of stripes, so virtual threads or a thread per task do not add buffers;
+ * the few threads sharing a stripe take its lock once per stage, which is rarely contended
+ */
+final class RecorderStripe {
+
+    private StageStats[] stages = new StageStats[16];
+
+    synchronized void record(int id, long queueWait, long run, boolean hop) {
+        StageStats stats = stage(id);
+        stats.queueWait.record(queueWait);
+        stats.run.record(run);
+        if (hop) {
+            stats.hops++;
+        }
+    }
+
+    /**
+     * adds the stats of the stage to the totals, and returns its hops
+     */
+    synchronized long addTo(int id, Histogram queueWait, Histogram run) {
+        if (id >= stages.length || stages[id] == null) {
+            return 0;
+        }
+        StageStats stats = stages[id];
+        stats.queueWait.addTo(queueWait);
+        stats.run.addTo(run);
+        return stats.hops;
+    }
+
+    private StageStats stage(int id) {
+        if (id >= stages.length) {
+            stages = Arrays.copyOf(stages, Math.max(id + 1, stages.length * 2));
+        }
+        StageStats stats = stages[id];
+        if (stats == null) {
+            stats = new StageStats();
+            stages[id] = stats;
+        }
+        return stats;
+    }
+
+    private static final class StageStats {
+        final Histogram queueWait = new Histogram();
+        final Histogram run = new Histogram();
+        long hops;
+    }
+}
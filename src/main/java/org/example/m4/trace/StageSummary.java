@@ -0,0 +1,29 @@
+package org.example.m4.trace;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * the statistics of one stage, all threads merged, times in nanoseconds
+ *
+ * @param stage   the name given when wrapping the stage
+ * @param count   the number of times the stage ran
+ * @param hops    how many of those ran on a different thread than the previous stage of the same trace
+ * @param waitP50 the median time between the end of the previous stage (or the start of the trace) and the start of this one
+ * @param runP50  the median time the stage itself ran
+ */
+public record StageSummary(String stage, long count, long hops,
+                           long waitP50, long waitP99, long waitMax,
+                           long runP50, long runP99, long runMax) {
+
+    @Override
+    public String toString() {
+        return String.format("%-20s count=%-8d hops=%-8d wait p50=%-8s p99=%-8s max=%-8s run p50=%-8s p99=%-8s max=%s",
+                stage, count, hops,
+                micros(waitP50), micros(waitP99), micros(waitMax),
+                micros(runP50), micros(runP99), micros(runMax));
+    }
+
+    private static String micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos) + "us";
+    }
+}
@@ -1,8 +1,20 @@
 package org.example.m5;
 
+import org.example.m5.executor.ExecutorRegistry;
+import org.example.m5.executor.ExecutorStrategy;
+import org.example.m5.executor.StageClass;
+import org.example.m5.executor.StagePools;
+import org.example.m5.executor.StickyExecutor;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 public class SpecifyingThreadExample {
@@ -11,8 +23,10 @@ public class SpecifyingThreadExample {
      */
     public static void example1() {
 
-        ExecutorService executorService1 = Executors.newFixedThreadPool(1);
-        ExecutorService executorService3 = Executors.newFixedThreadPool(1);
+        // the kind of executor comes from -Dexecutor.strategy, a fixed pool of platform threads by default
+        ExecutorStrategy strategy = ExecutorStrategy.configured();
+        ExecutorService executorService1 = strategy.create(1);
+        ExecutorService executorService3 = strategy.create(1);
 
 
         Supplier<String> s1 = () -> {
@@ -40,6 +54,8 @@ public class SpecifyingThreadExample {
         var cf1 = CompletableFuture.supplyAsync(s1, executorService1);
 
         // convention 2: the downstream tasks is executed in the same threads as their parent
+        // cf2 and the first stage of cf3 are given no executor on purpose, unlike the other examples:
+        // they are the contrast case, showing where a stage runs when it falls back to ForkJoinPool.commonPool()
         var cf2 = CompletableFuture
                 // running on ForkJoinPool.commonPool-worker-1
                 .supplyAsync(s2).thenApply(r2 -> {
@@ -72,8 +88,150 @@ public class SpecifyingThreadExample {
         executorService3.shutdown();
     }
 
+    /**
+     * to demonstrate choosing the executor by configuration, e.g. running blocking stages on virtual threads
+     * run with -Dexecutor.strategy=virtual, then with -Dexecutor.strategy=fixed and compare the time
+     * see "--->"
+     */
+    public static void example2() {
+        ExecutorStrategy strategy = ExecutorStrategy.configured();
+        ExecutorService executorService = strategy.create();
+
+        // pretending a blocking fetch, e.g. a JDBC call
+        Supplier<String> blockingFetch = () -> {
+            sleep(100);
+            return Thread.currentThread().getName();
+        };
+
+        long start = System.currentTimeMillis();
+
+        // ---> 1000 chains blocking at the same time:
+        // a fixed pool runs them "parallelism" at a time, virtual threads simply park while sleeping
+        List<CompletableFuture<String>> chains = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            // ---> every *Async stage is given the executor, none of them falls back to ForkJoinPool.commonPool()
+            chains.add(CompletableFuture.supplyAsync(blockingFetch, executorService)
+                    .thenApplyAsync(name -> name + " -> " + Thread.currentThread().getName(), executorService));
+        }
+
+        CompletableFuture.allOf(chains.toArray(CompletableFuture[]::new)).join();
+
+        System.out.println(strategy + " - 1000 chains in " + (System.currentTimeMillis() - start) + " ms"
+                + " - last ran in " + chains.get(chains.size() - 1).join());
+
+        // remember to shut down
+        executorService.shutdown();
+    }
+
+    /**
+     * to demonstrate avoiding the thread hops between *Async stages given the same executor (StickyExecutor)
+     * see "--->"
+     */
+    public static void example3() {
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+
+        runChains("plain ", executorService);
+        // ---> same pool, but a stage triggered from one of its threads runs right there
+        StickyExecutor sticky = new StickyExecutor(executorService);
+        runChains("sticky", sticky);
+        System.out.println("sticky - inlined " + sticky.inlinedCount() + ", submitted " + sticky.submittedCount());
+
+        // remember to shut down
+        executorService.shutdown();
+    }
+
+    private static void runChains(String name, Executor executor) {
+        LongAdder hops = new LongAdder();
+        // each stage returns its thread, and counts a hop when it is not the thread of the previous stage
+        Function<Thread, Thread> stage = previous -> {
+            if (previous != Thread.currentThread()) {
+                hops.increment();
+            }
+            return Thread.currentThread();
+        };
+
+        long start = System.nanoTime();
+        List<CompletableFuture<Thread>> chains = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            // ---> 4 *Async stages on the same executor: each one is a queue handoff with a plain pool
+            chains.add(CompletableFuture.supplyAsync(Thread::currentThread, executor)
+                    .thenApplyAsync(stage, executor)
+                    .thenApplyAsync(stage, executor)
+                    .thenApplyAsync(stage, executor)
+                    .thenApplyAsync(stage, executor));
+        }
+        CompletableFuture.allOf(chains.toArray(CompletableFuture[]::new)).join();
+
+        System.out.println(name + " - 10000 chains in " + (System.nanoTime() - start) / 1_000_000 + " ms, "
+                + hops.sum() + " thread hops out of 40000 stages");
+    }
+
+    /**
+     * to demonstrate a pool per class of stage, instead of ForkJoinPool.commonPool() for all of them (StagePools)
+     * size the pools with e.g. -Dstage.pool.fetch.parallelism=64
+     * see "--->"
+     */
+    public static void example4() {
+        try (StagePools pools = new StagePools()) {
+            // pretending a blocking fetch
+            Supplier<String> fetch = () -> {
+                sleep(10);
+                return Thread.currentThread().getName();
+            };
+
+            List<CompletableFuture<String>> chains = new ArrayList<>();
+            for (int i = 0; i < 1_000; i++) {
+                // ---> the fetch blocks threads of its own pool, the mapping and the logging are not queued behind it
+                chains.add(CompletableFuture.supplyAsync(fetch, pools.pool(StageClass.FETCH))
+                        .thenApplyAsync(name -> name + " -> " + Thread.currentThread().getName(), pools.pool(StageClass.CPU))
+                        .thenApplyAsync(name -> name + " -> " + Thread.currentThread().getName(), pools.pool(StageClass.LOGGING)));
+            }
+            CompletableFuture.allOf(chains.toArray(CompletableFuture[]::new)).join();
+            System.out.println("last chain ran in " + chains.get(chains.size() - 1).join());
+
+            // ---> the counters to size each pool: steals, queued submissions, active and running threads
+            pools.dump(System.out);
+        }
+    }
+
+    /**
+     * to demonstrate pools shared by the whole process, leased per chain instead of created and shut down each time (ExecutorRegistry)
+     * see "--->"
+     */
+    public static void example5() {
+        ExecutorRegistry registry = ExecutorRegistry.shared();
+
+        // ---> the threads are started before the first request, not by it
+        long start = System.nanoTime();
+        int threads = registry.prestart(StageClass.FETCH.poolName());
+        System.out.println(threads + " fetch threads started in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+
+        // pretending a blocking fetch
+        Supplier<String> fetch = () -> {
+            sleep(20);
+            return Thread.currentThread().getName();
+        };
+
+        List<CompletableFuture<String>> chains = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            // ---> one lease per chain, closed when the chain completes, whatever the outcome
+            ExecutorRegistry.Lease lease = registry.lease(StageClass.FETCH.poolName());
+            chains.add(CompletableFuture.supplyAsync(fetch, lease)
+                    .whenComplete((name, exception) -> lease.close()));
+        }
+        System.out.println("in flight: " + registry.leases(StageClass.FETCH.poolName()) + " leases, pools created: " + registry.created());
+
+        // ---> no new lease from here, the chains in flight complete before the pools are shut down
+        boolean drained = registry.shutdown(Duration.ofSeconds(5));
+        System.out.println("drained: " + drained + ", completed chains: " + chains.stream().filter(CompletableFuture::isDone).count());
+    }
+
     public static void main(String[] args) {
-        example1();
+        //example1();
+        //example2();
+        //example3();
+        //example4();
+        example5();
     }
 
     private static void sleep(int timeout) {
@@ -0,0 +1,310 @@
+package org.example.m5.executor;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * named executors shared by the whole process, instead of an ExecutorService created and shut down by every example
+ * <p>
+ * a pool is created at its first lease, and kept afterwards, so the next request does not pay for new threads.
+ * A {@link Lease} counts as in flight until it is closed: hold one per chain, and close it when the chain completes.
+ * {@link #shutdown(Duration)} waits for the leases, then for the tasks already submitted, up to the deadline.
+ * <pre>
+ *     try (ExecutorRegistry.Lease fetch = ExecutorRegistry.shared().lease("fetch")) {
+ *         CompletableFuture.supplyAsync(supplier, fetch).join();
+ *     }
+ * </pre>
+ * the shared registry defines a pool per {@link StageClass}, and "default" for -Dexecutor.strategy
+ */
+public class ExecutorRegistry {
+
+    public static final String DEFAULT = "default";
+
+    private static final class Holder {
+        static final ExecutorRegistry SHARED = createShared();
+    }
+
+    // guarded by this
+    private final Map<String, Pool> pools = new LinkedHashMap<>();
+    private int leases;
+    private boolean shutdown;
+
+    /**
+     * the registry of the process, shut down with a deadline of 10 seconds when the JVM exits
+     */
+    public static ExecutorRegistry shared() {
+        return Holder.SHARED;
+    }
+
+    private static ExecutorRegistry createShared() {
+        ExecutorRegistry registry = new ExecutorRegistry();
+        for (StageClass stageClass : StageClass.values()) {
+            registry.define(stageClass.poolName(), () -> StagePools.create(stageClass.poolName(), stageClass.configuredParallelism()));
+        }
+        registry.define(DEFAULT, () -> ExecutorStrategy.configured().create());
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> registry.shutdown(Duration.ofSeconds(10)), "executor-registry-shutdown"));
+        return registry;
+    }
+
+    /**
+     * defines a pool, the factory is called at its first lease
+     * the registry owns the pool: the factory must return a new one, the registry shuts it down;
+     * but ForkJoinPool.commonPool(), which the factory of ExecutorStrategy.COMMON_POOL returns, is never shut down
+     */
+    public synchronized void define(String name, Supplier<? extends ExecutorService> factory) {
+        if (shutdown) {
+            throw new IllegalStateException("The executor registry is shut down");
+        }
+        add(new Pool(name, factory, true));
+    }
+
+    public void define(String name, ExecutorStrategy strategy, int parallelism) {
+        define(name, () -> strategy.create(parallelism));
+    }
+
+    /**
+     * adds an executor owned by someone else, e.g. one of a framework: leased like the others,
+     * but {@link #shutdown(Duration)} neither shuts it down nor waits for its tasks
+     */
+    public synchronized void register(String name, ExecutorService executor) {
+        if (shutdown) {
+            throw new IllegalStateException("The executor registry is shut down");
+        }
+        Objects.requireNonNull(executor);
+        add(new Pool(name, () -> executor, false));
+    }
+
+    // guarded by this
+    private void add(Pool pool) {
+        if (pools.putIfAbsent(pool.name, pool) != null) {
+            throw new IllegalArgumentException("Executor already defined: " + pool.name);
+        }
+    }
+
+    /**
+     * leases the pool, creating it if needed
+     * the lease must be closed when the work submitted through it is done
+     *
+     * @throws RejectedExecutionException once the registry is shut down
+     */
+    public synchronized Lease lease(String name) {
+        if (shutdown) {
+            throw new RejectedExecutionException("The executor registry is shut down");
+        }
+        Pool pool = pool(name);
+        pool.leases++;
+        leases++;
+        return new Lease(pool, pool.executor());
+    }
+
+    /**
+     * creates the pool if needed and starts its threads, so the first request does not wait for them
+     * a ThreadPoolExecutor starts its core threads, a ForkJoinPool gets one blocking task per thread;
+     * the others, e.g. virtual threads, have nothing to start
+     *
+     * @return the threads of the pool once started
+     */
+    public int prestart(String name) {
+        ExecutorService executor;
+        synchronized (this) {
+            if (shutdown) {
+                throw new RejectedExecutionException("The executor registry is shut down");
+            }
+            executor = pool(name).executor();
+        }
+        if (executor instanceof ThreadPoolExecutor threadPool) {
+            threadPool.prestartAllCoreThreads();
+            return threadPool.getPoolSize();
+        }
+        if (executor instanceof ForkJoinPool forkJoinPool && forkJoinPool != ForkJoinPool.commonPool()) {
+            // the tasks block until all of them run, so each one holds a thread of its own
+            int parallelism = forkJoinPool.getParallelism();
+            CountDownLatch started = new CountDownLatch(parallelism);
+            for (int i = 0; i < parallelism; i++) {
+                forkJoinPool.execute(() -> {
+                    started.countDown();
+                    try {
+                        started.await(1, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            try {
+                started.await(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return forkJoinPool.getPoolSize();
+        }
+        return 0;
+    }
+
+    /**
+     * the leases not closed yet of the pool
+     */
+    public synchronized int leases(String name) {
+        return pool(name).leases;
+    }
+
+    /**
+     * the pools created so far, in the order of their definition
+     */
+    public synchronized List<String> created() {
+        List<String> created = new ArrayList<>();
+        pools.values().forEach(pool -> {
+            if (pool.executor != null) {
+                created.add(pool.name);
+            }
+        });
+        return created;
+    }
+
+    public synchronized boolean isShutdown() {
+        return shutdown;
+    }
+
+    /**
+     * stops leasing, waits for the leases to be closed, shuts the pools down, and waits for the tasks already submitted
+     * whatever is still running at the deadline is interrupted with shutdownNow()
+     * <p>
+     * the pools it does not own are left alone, and their tasks are not waited for: the executors given to
+     * {@link #register(String, ExecutorService)}, and ForkJoinPool.commonPool(), e.g. with -Dexecutor.strategy=common_pool,
+     * whose awaitTermination() never returns true
+     * <p>
+     * calling it again waits for the same deadline again
+     *
+     * @return true if everything completed before the deadline
+     */
+    public boolean shutdown(Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        List<ExecutorService> executors = new ArrayList<>();
+        boolean drained;
+        synchronized (this) {
+            shutdown = true;
+            try {
+                long remaining;
+                while (leases > 0 && (remaining = deadline - System.nanoTime()) > 0) {
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            drained = leases == 0;
+            pools.values().forEach(pool -> {
+                if (pool.executor != null && pool.owned()) {
+                    executors.add(pool.executor);
+                }
+            });
+        }
+
+        executors.forEach(ExecutorService::shutdown);
+        for (ExecutorService executor : executors) {
+            try {
+                if (!executor.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                    drained = false;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                drained = false;
+            }
+        }
+        if (!drained) {
+            executors.forEach(ExecutorService::shutdownNow);
+        }
+        return drained;
+    }
+
+    // guarded by this
+    private Pool pool(String name) {
+        Pool pool = pools.get(name);
+        if (pool == null) {
+            throw new IllegalArgumentException("Unknown executor: " + name);
+        }
+        return pool;
+    }
+
+    private synchronized void release(Pool pool) {
+        pool.leases--;
+        if (--leases == 0) {
+            notifyAll();
+        }
+    }
+
+    private static final class Pool {
+        final String name;
+        final Supplier<? extends ExecutorService> factory;
+        final boolean ownsExecutor;
+        // guarded by the registry
+        ExecutorService executor;
+        int leases;
+
+        Pool(String name, Supplier<? extends ExecutorService> factory, boolean ownsExecutor) {
+            this.name = name;
+            this.factory = factory;
+            this.ownsExecutor = ownsExecutor;
+        }
+
+        // whether the registry shuts the executor down; the common pool cannot be, whatever the factory returned it
+        boolean owned() {
+            return ownsExecutor && executor != ForkJoinPool.commonPool();
+        }
+
+        ExecutorService executor() {
+            if (executor == null) {
+                executor = factory.get();
+            }
+            return executor;
+        }
+    }
+
+    /**
+     * the use of a pool of the registry, to pass to the *Async stages
+     * it cannot shut the pool down; closing it only tells the registry the work submitted through it is done
+     */
+    public final class Lease implements Executor, AutoCloseable {
+        private final Pool pool;
+        private final ExecutorService executor;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Lease(Pool pool, ExecutorService executor) {
+            this.pool = pool;
+            this.executor = executor;
+        }
+
+        public String name() {
+            return pool.name;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            if (closed.get()) {
+                throw new RejectedExecutionException("The lease of " + pool.name + " is closed");
+            }
+            executor.execute(command);
+        }
+
+        /**
+         * can be called more than once, e.g. from a whenComplete() and a finally
+         */
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                release(pool);
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package org.example.m5.executor;
+
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * the kind of executor the *Async stages run on, selectable by configuration:
+ * <pre>
+ *     -Dexecutor.strategy=fixed|work_stealing|virtual|common_pool
+ *     -Dexecutor.parallelism=4
+ * </pre>
+ * "virtual" runs every task on its own virtual thread, so blocking fetch stages park
+ * instead of pinning a platform thread, and tens of thousands of chains can wait at the same time.
+ */
+public enum ExecutorStrategy {
+
+    /**
+     * a platform thread pool of a fixed size, like Executors.newFixedThreadPool()
+     */
+    FIXED {
+        @Override
+        public ExecutorService create(int parallelism) {
+            return Executors.newFixedThreadPool(parallelism);
+        }
+    },
+
+    /**
+     * a ForkJoinPool of its own, like Executors.newWorkStealingPool()
+     */
+    WORK_STEALING {
+        @Override
+        public ExecutorService create(int parallelism) {
+            return Executors.newWorkStealingPool(parallelism);
+        }
+    },
+
+    /**
+     * a new virtual thread per task, the parallelism is ignored
+     */
+    VIRTUAL {
+        @Override
+        public ExecutorService create(int parallelism) {
+            // virtual threads have no name by default, name them so the "Running in thread" logs stay readable
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("virtual-", 0).factory());
+        }
+    },
+
+    /**
+     * ForkJoinPool.commonPool(), the parallelism is ignored
+     * shutdown() has no effect on the common pool, so it can be shut down like the others
+     */
+    COMMON_POOL {
+        @Override
+        public ExecutorService create(int parallelism) {
+            return ForkJoinPool.commonPool();
+        }
+    };
+
+    public static final String STRATEGY_PROPERTY = "executor.strategy";
+    public static final String PARALLELISM_PROPERTY = "executor.parallelism";
+
+    /**
+     * creates a new executor of this kind
+     * the caller owns it, and has to shut it down
+     */
+    public abstract ExecutorService create(int parallelism);
+
+    /**
+     * creates a new executor of this kind, with the configured parallelism
+     */
+    public ExecutorService create() {
+        return create(configuredParallelism());
+    }
+
+    /**
+     * the strategy of -Dexecutor.strategy, FIXED when not set
+     */
+    public static ExecutorStrategy configured() {
+        return fromName(System.getProperty(STRATEGY_PROPERTY, FIXED.name()));
+    }
+
+    /**
+     * the parallelism of -Dexecutor.parallelism, the number of processors when not set
+     */
+    public static int configuredParallelism() {
+        String value = System.getProperty(PARALLELISM_PROPERTY);
+        if (value == null) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        int parallelism = Integer.parseInt(value.trim());
+        if (parallelism < 1) {
+            throw new IllegalArgumentException(PARALLELISM_PROPERTY + " must be positive: " + parallelism);
+        }
+        return parallelism;
+    }
+
+    /**
+     * accepts the constant names in any case, with '-' or '_', e.g. "work-stealing"
+     */
+    public static ExecutorStrategy fromName(String name) {
+        try {
+            return valueOf(name.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown " + STRATEGY_PROPERTY + ": " + name, e);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package org.example.m5.executor;
+
+/**
+ * a snapshot of the counters of one pool of {@link StagePools}
+ *
+ * @param poolSize          the threads started, idle ones included
+ * @param activeThreads     the threads running or stealing tasks
+ * @param runningThreads    the threads running tasks, not blocked waiting
+ * @param stealCount        the tasks taken from the queue of another thread, a high count means uneven work
+ * @param queuedSubmissions the tasks submitted from outside the pool not started yet
+ * @param queuedTasks       the tasks forked by the threads of the pool not started yet
+ */
+public record PoolStats(String name, int parallelism, int poolSize, int activeThreads, int runningThreads,
+                        long stealCount, int queuedSubmissions, long queuedTasks) {
+}
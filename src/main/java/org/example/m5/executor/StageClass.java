@@ -0,0 +1,57 @@
+package org.example.m5.executor;
+
+import java.util.Locale;
+
+/**
+ * the kinds of stage that get a ForkJoinPool of their own in {@link StagePools}
+ * the parallelism of each one is configurable, e.g. -Dstage.pool.fetch.parallelism=64
+ */
+public enum StageClass {
+
+    /**
+     * CPU-bound mapping, e.g. building the users from the ids: one thread per core
+     */
+    CPU(1),
+
+    /**
+     * fetches blocking on I/O: more threads than cores, since they mostly wait
+     */
+    FETCH(4),
+
+    /**
+     * logging and other small event-style work: it must not steal the cores of the others
+     */
+    LOGGING(0);
+
+    public static final String PROPERTY_PREFIX = "stage.pool.";
+
+    // threads per core, 0 for a single thread
+    private final int threadsPerCore;
+
+    StageClass(int threadsPerCore) {
+        this.threadsPerCore = threadsPerCore;
+    }
+
+    /**
+     * the name of the pool, and of its threads: "cpu-worker-1"
+     */
+    public String poolName() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * -Dstage.pool.&lt;name&gt;.parallelism, or the default of the class
+     */
+    public int configuredParallelism() {
+        String property = PROPERTY_PREFIX + poolName() + ".parallelism";
+        String value = System.getProperty(property);
+        if (value == null) {
+            return Math.max(1, threadsPerCore * Runtime.getRuntime().availableProcessors());
+        }
+        int parallelism = Integer.parseInt(value.trim());
+        if (parallelism < 1) {
+            throw new IllegalArgumentException(property + " must be positive: " + parallelism);
+        }
+        return parallelism;
+    }
+}
@@ -0,0 +1,77 @@
+package org.example.m5.executor;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * one ForkJoinPool per {@link StageClass}, instead of ForkJoinPool.commonPool() for every *Async stage
+ * <p>
+ * in the common pool, sized to the cores minus one, the blocking fetches hold the threads the mapping needs,
+ * and the logging queues behind both. Here each class of stage is isolated, sized on its own,
+ * and its counters can be read to size it: see {@link #stats()}.
+ * <p>
+ * the pools are in async mode: the tasks submitted to them are never joined, so they run in FIFO order,
+ * like the events they are, instead of the LIFO order of fork/join
+ */
+public class StagePools implements AutoCloseable {
+
+    private final Map<StageClass, ForkJoinPool> pools = new EnumMap<>(StageClass.class);
+
+    /**
+     * the pools with the configured parallelism, see {@link StageClass#configuredParallelism()}
+     */
+    public StagePools() {
+        for (StageClass stageClass : StageClass.values()) {
+            pools.put(stageClass, create(stageClass.poolName(), stageClass.configuredParallelism()));
+        }
+    }
+
+    public ForkJoinPool pool(StageClass stageClass) {
+        return pools.get(stageClass);
+    }
+
+    public List<PoolStats> stats() {
+        List<PoolStats> stats = new ArrayList<>();
+        pools.forEach((stageClass, pool) -> stats.add(new PoolStats(stageClass.poolName(), pool.getParallelism(),
+                pool.getPoolSize(), pool.getActiveThreadCount(), pool.getRunningThreadCount(),
+                pool.getStealCount(), pool.getQueuedSubmissionCount(), pool.getQueuedTaskCount())));
+        return stats;
+    }
+
+    public void dump(PrintStream out) {
+        stats().forEach(out::println);
+    }
+
+    /**
+     * shuts the pools down, and waits up to 10 seconds for the tasks already submitted
+     */
+    @Override
+    public void close() {
+        pools.values().forEach(ForkJoinPool::shutdown);
+        try {
+            for (ForkJoinPool pool : pools.values()) {
+                pool.awaitTermination(10, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static ForkJoinPool create(String name, int parallelism) {
+        AtomicInteger threads = new AtomicInteger();
+        ForkJoinPool.ForkJoinWorkerThreadFactory factory = pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            // named, so the "Running in thread" logs tell the pools apart
+            thread.setName(name + "-worker-" + threads.incrementAndGet());
+            return thread;
+        };
+        return new ForkJoinPool(parallelism, factory, null, true);
+    }
+}
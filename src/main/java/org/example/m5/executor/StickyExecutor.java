@@ -0,0 +1,118 @@
+package org.example.m5.executor;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * an Executor that runs a task inline when the caller already is a thread of the pool, instead of a queue handoff
+ * <p>
+ * thenApplyAsync(fn, executor) always submits fn, even when the parent completed on a thread of the same executor:
+ * the task is queued, picked up by another thread (or the same one later), and the data it touches is cold again.
+ * Given this executor, a stage triggered from a thread of the pool runs right there, like a non-async stage,
+ * and a stage triggered from anywhere else (main, another pool, a timer) is submitted as usual.
+ * <p>
+ * Running inline grows the stack, so after maxDepth nested inline runs the task is submitted anyway.
+ * Only the threads running tasks given through this wrapper (or the workers of a ForkJoinPool delegate) are known
+ * to belong to the pool.
+ * <p>
+ * Do not use it for stages that block: they would block the thread that completed the parent, not a fresh one.
+ */
+public final class StickyExecutor implements Executor {
+
+    public static final int DEFAULT_MAX_DEPTH = 16;
+
+    // what the current thread is running: the StickyExecutor whose task it is, and the inline depth
+    private static final ThreadLocal<Frame> FRAME = ThreadLocal.withInitial(Frame::new);
+
+    private final Executor delegate;
+    private final int maxDepth;
+    private final LongAdder inlined = new LongAdder();
+    private final LongAdder submitted = new LongAdder();
+
+    public StickyExecutor(Executor delegate) {
+        this(delegate, DEFAULT_MAX_DEPTH);
+    }
+
+    public StickyExecutor(Executor delegate, int maxDepth) {
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException("maxDepth must not be negative: " + maxDepth);
+        }
+        this.delegate = delegate;
+        this.maxDepth = maxDepth;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        Frame frame = FRAME.get();
+        if (frame.depth < maxDepth && belongsToPool(frame) && !isShutdown()) {
+            inlined.increment();
+            Executor previousOwner = frame.owner;
+            frame.owner = this;
+            frame.depth++;
+            try {
+                task.run();
+            } finally {
+                frame.depth--;
+                frame.owner = previousOwner;
+            }
+            return;
+        }
+        submitted.increment();
+        delegate.execute(() -> runOnPool(task));
+    }
+
+    public Executor delegate() {
+        return delegate;
+    }
+
+    /**
+     * the number of tasks run on the caller's thread
+     */
+    public long inlinedCount() {
+        return inlined.sum();
+    }
+
+    /**
+     * the number of tasks handed to the delegate
+     */
+    public long submittedCount() {
+        return submitted.sum();
+    }
+
+    private void runOnPool(Runnable task) {
+        Frame frame = FRAME.get();
+        Executor previousOwner = frame.owner;
+        int previousDepth = frame.depth;
+        // a fresh task starts on a fresh stack
+        frame.owner = this;
+        frame.depth = 0;
+        try {
+            task.run();
+        } finally {
+            frame.owner = previousOwner;
+            frame.depth = previousDepth;
+        }
+    }
+
+    private boolean belongsToPool(Frame frame) {
+        if (frame.owner == this) {
+            return true;
+        }
+        return delegate instanceof ForkJoinPool pool
+                && Thread.currentThread() instanceof ForkJoinWorkerThread worker
+                && worker.getPool() == pool;
+    }
+
+    // a shut-down delegate has to reject the task, not have it run inline
+    private boolean isShutdown() {
+        return delegate instanceof ExecutorService executorService && executorService.isShutdown();
+    }
+
+    private static final class Frame {
+        Executor owner;
+        int depth;
+    }
+}
@@ -0,0 +1,26 @@
+package org.example.m4.aggregate;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FoldTest {
+
+    @Test
+    void completingTheResultOfACallerDoesNotChangeTheFold() throws Exception {
+        CompletableFuture<Integer> first = new CompletableFuture<>();
+        CompletableFuture<Integer> second = new CompletableFuture<>();
+        IntFold sum = IntFold.sum(List.of(first, second), Integer::intValue);
+
+        sum.result().complete(-1);
+        sum.result().obtrudeValue(-2);
+        first.complete(1);
+        second.complete(2);
+
+        assertEquals(3, sum.result().get(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,150 @@
+package org.example.m4.cancel;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CancellableFutureTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void cancelInterruptsTheRunningTask() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        CancellableFuture<Void> future = CancellableFuture.runAsync(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+        }, executor);
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        future.cancel(true);
+
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void aTaskCancelledWhileQueuedNeverStarts() throws Exception {
+        ExecutorService single = Executors.newSingleThreadExecutor();
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            single.execute(() -> await(release));
+            AtomicBoolean ran = new AtomicBoolean();
+            CancellableFuture<Void> queued = CancellableFuture.runAsync(() -> ran.set(true), single);
+
+            queued.cancel(false);
+            release.countDown();
+            single.shutdown();
+
+            assertTrue(single.awaitTermination(5, TimeUnit.SECONDS));
+            assertFalse(ran.get());
+        } finally {
+            single.shutdownNow();
+        }
+    }
+
+    @Test
+    void anAbandonedChainIsCancelledUpToItsSource() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CancellableFuture<Integer> source = CancellableFuture.supplyAsync(token -> {
+            started.countDown();
+            while (!token.isCancellationRequested()) {
+                Thread.onSpinWait();
+            }
+            return -1;
+        }, executor);
+        CompletableFuture<Integer> last = source.thenApply(value -> value + 1).thenApply(value -> value + 1);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        last.cancel(false);
+
+        assertTrue(source.isCancelled());
+    }
+
+    @Test
+    void aStageWithAnotherLiveDependentIsNotCancelled() {
+        CancellableFuture<Integer> source = new CancellableFuture<>();
+        CompletableFuture<Integer> first = source.thenApply(value -> value + 1);
+        CompletableFuture<Integer> second = source.thenApply(value -> value + 2);
+
+        first.cancel(false);
+        assertFalse(source.isCancelled());
+
+        second.cancel(false);
+        assertTrue(source.isCancelled());
+    }
+
+    @Test
+    void listenersAndCopiesDoNotKeepAStageAlive() {
+        CancellableFuture<Integer> source = new CancellableFuture<>();
+        CompletableFuture<Integer> logging = source.whenComplete((value, exception) -> {
+        });
+        CompletableFuture<Integer> copy = source.copy();
+        CompletableFuture<Integer> chain = source.thenApply(value -> value + 1);
+
+        // cancelling a listener does not cancel the source either
+        logging.cancel(false);
+        copy.cancel(false);
+        assertFalse(source.isCancelled());
+
+        chain.cancel(false);
+        assertTrue(source.isCancelled());
+    }
+
+    @Test
+    void cancellingTheComposedStageCancelsTheInnerOne() throws Exception {
+        CancellableFuture<Integer> source = new CancellableFuture<>();
+        CompletableFuture<Integer> inner = new CompletableFuture<>();
+        CompletableFuture<Integer> composed = source.thenCompose(value -> inner);
+        source.complete(1);
+
+        composed.cancel(false);
+
+        assertTrue(inner.isCancelled());
+    }
+
+    @Test
+    void runAsyncWithoutExecutorIsCancellable() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        CancellableFuture<Void> future = CancellableFuture.runAsync(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+        });
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        future.cancel(true);
+
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package org.example.m4.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class AsyncLimiterTest {
+
+    @Test
+    void drainsALongQueueOfCompletedTasksWithoutRecursion() throws Exception {
+        AsyncLimiter limiter = new AsyncLimiter(1);
+        CompletableFuture<Integer> blocker = new CompletableFuture<>();
+        limiter.submit(() -> blocker);
+
+        // queued behind the blocker, each one completes as soon as it starts
+        List<CompletableFuture<Integer>> queued = new ArrayList<>();
+        for (int i = 0; i < 200_000; i++) {
+            int value = i;
+            queued.add(limiter.submit(() -> CompletableFuture.completedFuture(value)));
+        }
+        assertEquals(200_000, limiter.queued());
+
+        blocker.complete(-1);
+
+        // a StackOverflowError thrown inside whenComplete() is swallowed: the last task would never complete
+        assertEquals(199_999, queued.get(199_999).get(10, TimeUnit.SECONDS));
+        assertEquals(0, limiter.inFlight());
+        assertEquals(0, limiter.queued());
+    }
+
+    @Test
+    void dropsAQueuedTaskCompletedWhileWaiting() {
+        AsyncLimiter limiter = new AsyncLimiter(1);
+        CompletableFuture<Integer> blocker = new CompletableFuture<>();
+        limiter.submit(() -> blocker);
+        AtomicBoolean started = new AtomicBoolean();
+        CompletableFuture<Integer> queued = limiter.submit(() -> {
+            started.set(true);
+            return CompletableFuture.completedFuture(1);
+        });
+
+        queued.cancel(false);
+        blocker.complete(-1);
+
+        assertFalse(started.get());
+        assertEquals(0, limiter.inFlight());
+        assertEquals(0, limiter.queued());
+    }
+}
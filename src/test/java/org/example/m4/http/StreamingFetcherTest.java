@@ -0,0 +1,183 @@
+package org.example.m4.http;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * StreamingFetcher against a local com.sun.net.httpserver stand-in
+ */
+class StreamingFetcherTest {
+
+    private static final int PAGE_SIZE = 1024 * 1024;
+    private static final int LARGE_PAGE_SIZE = 64 * 1024 * 1024;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private final AtomicBoolean largePageWritten = new AtomicBoolean();
+    private HttpServer server;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/page", exchange -> {
+            peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try (OutputStream body = exchange.getResponseBody()) {
+                sleep(30);
+                exchange.sendResponseHeaders(200, PAGE_SIZE);
+                write(body, PAGE_SIZE);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        });
+        server.createContext("/large", exchange -> {
+            try (OutputStream body = exchange.getResponseBody()) {
+                exchange.sendResponseHeaders(200, LARGE_PAGE_SIZE);
+                write(body, LARGE_PAGE_SIZE);
+                largePageWritten.set(true);
+            }
+        });
+        server.createContext("/broken", exchange -> {
+            // announces a page, sends a part of it, and drops the connection
+            exchange.sendResponseHeaders(200, PAGE_SIZE);
+            exchange.getResponseBody().write(new byte[1024]);
+            exchange.getResponseBody().flush();
+            exchange.getHttpContext().getServer().stop(0);
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void streamsTheBodyChunkByChunk() {
+        List<Integer> chunkSizes = new ArrayList<>();
+        try (StreamingFetcher fetcher = new StreamingFetcher(4)) {
+            HttpResponse<Long> response = fetcher.stream(uri("/page"), chunk -> chunkSizes.add(chunk.remaining())).join();
+
+            assertEquals(200, response.statusCode());
+            assertEquals(PAGE_SIZE, response.body());
+            assertEquals(PAGE_SIZE, chunkSizes.stream().mapToInt(Integer::intValue).sum());
+            assertTrue(chunkSizes.size() > 1, "the body came as " + chunkSizes.size() + " chunk");
+        }
+    }
+
+    @Test
+    void limitsTheRequestsInFlight() {
+        try (StreamingFetcher fetcher = new StreamingFetcher(2)) {
+            List<CompletableFuture<HttpResponse<Long>>> responses = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                responses.add(fetcher.countBytes(uri("/page")));
+            }
+
+            for (CompletableFuture<HttpResponse<Long>> response : responses) {
+                assertEquals(PAGE_SIZE, response.join().body());
+            }
+            assertTrue(peakInFlight.get() <= 2, "peak in flight: " + peakInFlight.get());
+            assertEquals(0, fetcher.limiter().inFlight());
+        }
+    }
+
+    @Test
+    void slowConsumerHoldsTheServerBack() throws InterruptedException {
+        CountDownLatch firstChunk = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        try (StreamingFetcher fetcher = new StreamingFetcher(1)) {
+            CompletableFuture<HttpResponse<Long>> response = fetcher.stream(uri("/large"), chunk -> {
+                firstChunk.countDown();
+                try {
+                    resume.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+
+            assertTrue(firstChunk.await(5, TimeUnit.SECONDS));
+            // the consumer holds the first chunk: no more is requested, so the server cannot write the whole page
+            Thread.sleep(500);
+            assertFalse(largePageWritten.get(), "the whole page was read while the consumer was blocked");
+
+            resume.countDown();
+            assertEquals(LARGE_PAGE_SIZE, response.join().body());
+        }
+    }
+
+    @Test
+    void propagatesTheFailureOfTheConsumer() {
+        IllegalStateException failure = new IllegalStateException("cannot process the chunk");
+        try (StreamingFetcher fetcher = new StreamingFetcher(1)) {
+            CompletableFuture<HttpResponse<Long>> response = fetcher.stream(uri("/page"), chunk -> {
+                throw failure;
+            });
+
+            CompletionException thrown = assertThrows(CompletionException.class, response::join);
+            assertSame(failure, rootCause(thrown));
+            // the permit is given back: the next request goes through
+            assertEquals(PAGE_SIZE, fetcher.countBytes(uri("/page")).join().body());
+        }
+    }
+
+    @Test
+    void propagatesATruncatedBody() {
+        try (StreamingFetcher fetcher = new StreamingFetcher(1)) {
+            CompletableFuture<HttpResponse<Long>> response = fetcher.countBytes(uri("/broken"));
+
+            CompletionException thrown = assertThrows(CompletionException.class, response::join);
+            assertInstanceOf(IOException.class, rootCause(thrown));
+            assertEquals(0, fetcher.limiter().inFlight());
+        }
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + server.getAddress().getPort() + path);
+    }
+
+    private static void write(OutputStream body, int size) throws IOException {
+        byte[] block = new byte[64 * 1024];
+        for (int written = 0; written < size; written += block.length) {
+            body.write(block, 0, Math.min(block.length, size - written));
+        }
+    }
+
+    private static Throwable rootCause(Throwable throwable) {
+        while (throwable.getCause() != null) {
+            throwable = throwable.getCause();
+        }
+        return throwable;
+    }
+
+    private static void sleep(int millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
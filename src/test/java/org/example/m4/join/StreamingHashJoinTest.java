@@ -0,0 +1,120 @@
+package org.example.m4.join;
+
+import org.example.m4.model.ColumnBatch;
+import org.example.m4.model.Email;
+import org.example.m4.model.LongIdBatch;
+import org.example.m4.model.User;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StreamingHashJoinTest {
+
+    @Test
+    void joinsTheRowsOfAColumnBatch() throws Exception {
+        Map<Long, Long> pairs = new ConcurrentHashMap<>();
+        StreamingHashJoin<User, Email, Long> join = new StreamingHashJoin<>(User::getId, Email::getId,
+                (user, email) -> {
+                    pairs.put(user.getId(), email.getId());
+                    return user.getId();
+                }, id -> {
+                });
+
+        join.left(CompletableFuture.completedFuture(ColumnBatch.onHeap(LongIdBatch.range(0, 1000), User::new, User::setId)));
+        join.acceptRight(LongIdBatch.range(500, 1000).mapToObj(Email::new));
+        join.acceptRight(LongIdBatch.range(0, 500).mapToObj(Email::new));
+        join.completeRight();
+
+        assertEquals(1000, join.result().get(5, TimeUnit.SECONDS));
+        for (long id = 0; id < 1000; id++) {
+            assertEquals(id, pairs.get(id));
+        }
+    }
+
+    @Test
+    void aSlowConsumerDoesNotHoldTheOtherSide() throws Exception {
+        CountDownLatch inConsumer = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger emitted = new AtomicInteger();
+        StreamingHashJoin<Long, Long, Long> join = new StreamingHashJoin<>(Long::longValue, Long::longValue,
+                (left, right) -> left, left -> {
+            inConsumer.countDown();
+            await(release);
+            emitted.incrementAndGet();
+        });
+        join.acceptLeft(List.of(1L, 2L));
+
+        CompletableFuture<Void> blocked = CompletableFuture.runAsync(() -> join.acceptRight(List.of(1L)));
+        assertTrue(inConsumer.await(5, TimeUnit.SECONDS));
+
+        // the other side goes on while the consumer is blocked: its match is queued for the thread in the consumer
+        CompletableFuture.runAsync(() -> {
+            join.acceptRight(List.of(2L));
+            join.completeLeft();
+            join.completeRight();
+        }).get(5, TimeUnit.SECONDS);
+        assertEquals(0, emitted.get());
+
+        release.countDown();
+        blocked.get(5, TimeUnit.SECONDS);
+        assertEquals(2, join.result().get(5, TimeUnit.SECONDS));
+        assertEquals(2, emitted.get());
+    }
+
+    @Test
+    void aFailingConsumerFailsTheJoinAndTheLaterChunksAreIgnored() {
+        IllegalStateException failure = new IllegalStateException("cannot write the pair");
+        AtomicInteger calls = new AtomicInteger();
+        StreamingHashJoin<Long, Long, Long> join = new StreamingHashJoin<>(Long::longValue, Long::longValue,
+                (left, right) -> left, left -> {
+            calls.incrementAndGet();
+            throw failure;
+        });
+
+        join.acceptLeft(List.of(1L, 2L, 3L));
+        join.acceptRight(List.of(1L, 2L));
+        join.acceptRight(List.of(3L));
+        join.completeLeft();
+        join.completeRight();
+
+        ExecutionException thrown = assertThrows(ExecutionException.class, () -> join.result().get(5, TimeUnit.SECONDS));
+        assertSame(failure, thrown.getCause());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void completingTheResultOfACallerDoesNotChangeTheJoin() throws Exception {
+        StreamingHashJoin<Long, Long, Long> join = new StreamingHashJoin<>(Long::longValue, Long::longValue,
+                (left, right) -> left, left -> {
+        });
+
+        join.result().complete(-1L);
+        join.result().cancel(false);
+        join.acceptLeft(List.of(1L, 2L));
+        join.acceptRight(List.of(2L, 1L));
+        join.completeLeft();
+        join.completeRight();
+
+        assertEquals(2, join.result().get(5, TimeUnit.SECONDS));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
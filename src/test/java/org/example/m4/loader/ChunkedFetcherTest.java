@@ -0,0 +1,52 @@
+package org.example.m4.loader;
+
+import org.example.m4.model.LongIdBatch;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ChunkedFetcherTest {
+
+    @Test
+    void putsTheChunksBackInTheOrderOfTheIds() throws Exception {
+        // the later chunks complete first
+        Executor executor = CompletableFuture.delayedExecutor(10, TimeUnit.MILLISECONDS);
+        ChunkedFetcher<Long> fetcher = new ChunkedFetcher<>(chunk -> CompletableFuture.supplyAsync(
+                () -> chunk.mapToObj(id -> id), CompletableFuture.delayedExecutor(100 - chunk.get(0), TimeUnit.MILLISECONDS, executor)),
+                10, 4);
+
+        List<Long> values = fetcher.fetch(LongIdBatch.range(0, 100)).get(5, TimeUnit.SECONDS);
+
+        assertEquals(LongIdBatch.range(0, 100).boxed(), values);
+        assertEquals(0, fetcher.inFlight());
+    }
+
+    @Test
+    void dropsTheQueuedChunksOnceOneFailed() throws Exception {
+        IllegalStateException failure = new IllegalStateException("chunk failed");
+        CompletableFuture<List<Long>> firstChunk = new CompletableFuture<>();
+        AtomicInteger fetched = new AtomicInteger();
+        ChunkedFetcher<Long> fetcher = new ChunkedFetcher<>(chunk -> {
+            fetched.incrementAndGet();
+            return chunk.get(0) == 0 ? firstChunk : CompletableFuture.completedFuture(chunk.boxed());
+        }, 1, 1);
+
+        // a million chunks queued behind the first one
+        CompletableFuture<List<Long>> result = fetcher.fetch(LongIdBatch.range(0, 1_000_000));
+        firstChunk.completeExceptionally(failure);
+
+        ExecutionException thrown = assertThrows(ExecutionException.class, () -> result.get(10, TimeUnit.SECONDS));
+        assertSame(failure, thrown.getCause());
+        assertEquals(1, fetched.get());
+        assertEquals(0, fetcher.inFlight());
+    }
+}
@@ -0,0 +1,47 @@
+package org.example.m4.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.StreamSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ColumnBatchTest {
+
+    private final ColumnBatch<User> users = ColumnBatch.offHeap(LongIdBatch.range(1, 4), User::new, User::setId);
+
+    @Test
+    void iterableHandsOutRowsSafeToKeep() {
+        List<User> kept = new ArrayList<>();
+        for (User user : users) {
+            kept.add(user);
+        }
+
+        assertEquals(List.of(1L, 2L, 3L), kept.stream().map(User::getId).toList());
+        assertEquals(List.of(1L, 2L, 3L), StreamSupport.stream(users.spliterator(), false).map(User::getId).toList());
+        assertEquals(List.of(1L, 2L, 3L), users.toList().stream().map(User::getId).toList());
+    }
+
+    @Test
+    void flyweightsAreOneRowMovedToEachId() {
+        List<User> seen = new ArrayList<>();
+        List<Long> ids = new ArrayList<>();
+        users.forEachFlyweight(user -> {
+            seen.add(user);
+            ids.add(user.getId());
+        });
+
+        assertEquals(List.of(1L, 2L, 3L), ids);
+        assertSame(seen.get(0), seen.get(2));
+
+        Iterator<User> flyweights = users.flyweights();
+        User first = flyweights.next();
+        assertEquals(1L, first.getId());
+        assertSame(first, flyweights.next());
+        assertEquals(2L, first.getId());
+    }
+}
@@ -0,0 +1,180 @@
+package org.example.m4.pipeline;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PipelineTest {
+
+    private static final Executor REJECTING = runnable -> {
+        throw new RejectedExecutionException("rejected");
+    };
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4, runnable -> new Thread(runnable, "pipeline-async"));
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void fusesTheConsecutiveApplyStages() {
+        List<Integer> seen = new ArrayList<>();
+        Pipeline<Integer, Void> template = Pipeline.<Integer>start()
+                .thenApply(value -> value + 1)
+                .thenApply(value -> value * 10)
+                .thenAccept(seen::add);
+
+        assertEquals(1, template.stageCount());
+        assertTrue(template.trigger(1).isDone());
+        assertEquals(List.of(20), seen);
+
+        // an async stage, or any other kind, ends the fusing
+        assertEquals(3, Pipeline.<Integer>start()
+                .thenApply(value -> value + 1)
+                .thenApplyAsync(value -> value + 1, executor)
+                .thenApply(value -> value + 1)
+                .thenApply(value -> value + 1)
+                .stageCount());
+    }
+
+    @Test
+    void aCompletedComposeStageGoesOnOnTheCallingThread() {
+        Thread caller = Thread.currentThread();
+        Pipeline<Integer, Boolean> template = Pipeline.<Integer>start()
+                .thenCompose(value -> CompletableFuture.completedFuture(value + 1))
+                .thenApply(value -> Thread.currentThread() == caller && value == 2);
+
+        CompletableFuture<Boolean> result = template.trigger(1);
+
+        assertTrue(result.isDone());
+        assertTrue(result.join());
+    }
+
+    @Test
+    void aPendingComposeStageResumesTheRunWhenItCompletes() throws Exception {
+        CompletableFuture<Integer> inner = new CompletableFuture<>();
+        Pipeline<Integer, Integer> template = Pipeline.<Integer>start()
+                .thenCompose(value -> inner.thenApply(other -> value + other))
+                .thenApply(value -> value * 10);
+
+        CompletableFuture<Integer> result = template.trigger(1);
+        assertFalse(result.isDone());
+
+        inner.complete(2);
+
+        assertEquals(30, result.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void aFailureSkipsTheStagesUpToTheRecovery() {
+        IllegalStateException failure = new IllegalStateException("failed");
+        AtomicInteger skipped = new AtomicInteger();
+        List<Throwable> recovered = new ArrayList<>();
+        Pipeline<Integer, Integer> template = Pipeline.<Integer>start()
+                .thenCompose(value -> CompletableFuture.<Integer>failedFuture(failure))
+                .thenApply(value -> skipped.incrementAndGet())
+                .thenApplyAsync(value -> skipped.incrementAndGet(), executor)
+                .exceptionally(exception -> {
+                    recovered.add(exception);
+                    return -1;
+                })
+                .thenApply(value -> value * 10)
+                .exceptionally(exception -> -2);
+
+        assertEquals(-10, template.trigger(1).join());
+        assertEquals(0, skipped.get());
+        // the cause, not a CompletionException
+        assertEquals(List.of(failure), recovered);
+    }
+
+    @Test
+    void aFailureWithoutRecoveryFailsTheResult() {
+        IllegalStateException failure = new IllegalStateException("failed");
+        Pipeline<Integer, Integer> template = Pipeline.<Integer>start()
+                .thenApply(value -> {
+                    throw failure;
+                });
+
+        CompletionException thrown = assertThrows(CompletionException.class, () -> template.trigger(1).join());
+        assertSame(failure, thrown.getCause());
+    }
+
+    @Test
+    void anAsyncStageRunsOnItsExecutor() throws Exception {
+        Pipeline<Integer, String> template = Pipeline.<Integer>start()
+                .thenApplyAsync(value -> value + "@" + Thread.currentThread().getName(), executor);
+
+        assertEquals("1@pipeline-async", template.trigger(1).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void triggerAsyncHandsTheWholeRunOver() throws Exception {
+        Pipeline<Integer, String> template = Pipeline.<Integer>start()
+                .thenApply(value -> value + "@" + Thread.currentThread().getName());
+
+        assertEquals("1@pipeline-async", template.triggerAsync(1, executor).get(5, TimeUnit.SECONDS));
+
+        ExecutionException rejected = assertThrows(ExecutionException.class,
+                () -> template.triggerAsync(1, REJECTING).get(5, TimeUnit.SECONDS));
+        assertTrue(rejected.getCause() instanceof RejectedExecutionException);
+    }
+
+    @Test
+    void anAsyncStageRejectedByItsExecutorFailsTheRun() {
+        Pipeline<Integer, Integer> failing = Pipeline.<Integer>start()
+                .thenApplyAsync(value -> value + 1, REJECTING);
+        Pipeline<Integer, Integer> recovering = failing
+                .exceptionally(exception -> exception instanceof RejectedExecutionException ? -1 : -2);
+
+        CompletionException thrown = assertThrows(CompletionException.class, () -> failing.trigger(1).join());
+        assertTrue(thrown.getCause() instanceof RejectedExecutionException);
+        assertEquals(-1, recovering.trigger(1).join());
+    }
+
+    @Test
+    void aTemplateIsTriggeredConcurrently() throws Exception {
+        Pipeline<Integer, Integer> template = Pipeline.<Integer>start()
+                .thenApply(value -> value + 1)
+                .thenApplyAsync(value -> value * 2, executor)
+                .thenCompose(value -> CompletableFuture.supplyAsync(() -> value + 3, executor))
+                .thenApply(value -> value - 3);
+
+        List<CompletableFuture<List<CompletableFuture<Integer>>>> triggers = new ArrayList<>();
+        for (int thread = 0; thread < 4; thread++) {
+            int base = thread * 1000;
+            triggers.add(CompletableFuture.supplyAsync(() -> {
+                List<CompletableFuture<Integer>> results = new ArrayList<>();
+                for (int i = base; i < base + 1000; i++) {
+                    results.add(template.trigger(i));
+                }
+                return results;
+            }));
+        }
+
+        for (int thread = 0; thread < 4; thread++) {
+            List<CompletableFuture<Integer>> results = triggers.get(thread).get(10, TimeUnit.SECONDS);
+            for (int i = 0; i < results.size(); i++) {
+                int input = thread * 1000 + i;
+                assertEquals((input + 1) * 2, results.get(i).get(10, TimeUnit.SECONDS));
+            }
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package org.example.m4.promise;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LinearPromiseTest {
+
+    @Test
+    void joinDoesNotTakeThePlaceOfTheDependent() {
+        LinearPromise<Integer> promise = new LinearPromise<>();
+        LinearPromise<Integer> next = promise.thenApply(value -> value + 1);
+        completeLater(promise, 1);
+
+        assertEquals(1, promise.join());
+        assertEquals(2, next.join());
+    }
+
+    @Test
+    void toCompletableFutureCanBeCalledMoreThanOnce() throws Exception {
+        LinearPromise<Integer> promise = new LinearPromise<>();
+        CompletableFuture<Integer> first = promise.toCompletableFuture();
+        CompletableFuture<Integer> second = promise.toCompletableFuture();
+        LinearPromise<Integer> next = promise.thenApply(value -> value + 1);
+
+        // each caller gets a future of its own: completing one does not complete the promise
+        first.complete(-1);
+        promise.complete(1);
+
+        assertEquals(-1, first.get(1, TimeUnit.SECONDS));
+        assertEquals(1, second.get(1, TimeUnit.SECONDS));
+        assertEquals(2, next.join());
+    }
+
+    @Test
+    void combinesAfterALinearStage() throws Exception {
+        LinearPromise<Integer> promise = new LinearPromise<>();
+        LinearPromise<Integer> next = promise.thenApply(value -> value + 1);
+        CompletionStage<Integer> sum = promise.thenCombine(CompletableFuture.completedFuture(10), Integer::sum);
+
+        promise.complete(1);
+
+        assertEquals(2, next.join());
+        assertEquals(11, sum.toCompletableFuture().get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void keepsASingleLinearDependent() {
+        LinearPromise<Integer> promise = new LinearPromise<>();
+        promise.toCompletableFuture();
+        promise.thenApply(value -> value + 1);
+
+        assertThrows(IllegalStateException.class, () -> promise.thenApply(value -> value + 2));
+    }
+
+    @Test
+    void completesALongPendingChainWithoutRecursion() {
+        LinearPromise<Integer> first = new LinearPromise<>();
+        LinearPromise<Integer> last = first;
+        for (int i = 0; i < 300_000; i++) {
+            last = switch (i % 3) {
+                case 0 -> last.thenApply(value -> value + 1);
+                case 1 -> last.thenCompose(value -> LinearPromise.completed(value + 1));
+                default -> last.thenCompose(value -> CompletableFuture.completedFuture(value + 1));
+            };
+        }
+
+        first.complete(0);
+
+        assertEquals(300_000, last.join());
+    }
+
+    @Test
+    void joinThrowsACancellationAsItIs() {
+        CancellationException cancellation = new CancellationException();
+        assertSame(cancellation, assertThrows(CancellationException.class,
+                () -> LinearPromise.failed(cancellation).join()));
+
+        LinearPromise<Integer> pending = new LinearPromise<>();
+        pending.thenApply(value -> value + 1);
+        CompletableFuture.delayedExecutor(50, TimeUnit.MILLISECONDS).execute(() -> pending.completeExceptionally(cancellation));
+        assertSame(cancellation, assertThrows(CancellationException.class, pending::join));
+    }
+
+    @Test
+    void joinWrapsTheOtherFailures() {
+        IllegalStateException failure = new IllegalStateException();
+        CompletionException thrown = assertThrows(CompletionException.class,
+                () -> LinearPromise.failed(failure).thenApply(value -> value).join());
+        assertSame(failure, thrown.getCause());
+    }
+
+    @Test
+    void composesWithAPendingStage() throws Exception {
+        LinearPromise<Integer> source = new LinearPromise<>();
+        LinearPromise<Integer> inner = new LinearPromise<>();
+        CompletableFuture<Integer> innerFuture = new CompletableFuture<>();
+        LinearPromise<Integer> composed = source.thenCompose(value -> inner)
+                .thenCompose(value -> innerFuture.thenApply(other -> value + other));
+
+        source.complete(1);
+        assertFalse(composed.isDone());
+        inner.complete(10);
+        assertFalse(composed.isDone());
+        innerFuture.complete(100);
+
+        assertEquals(110, composed.join());
+    }
+
+    @Test
+    void composeFailsTheStageWhenItsFunctionReturnsAStageItCannotWaitFor() {
+        LinearPromise<Integer> taken = new LinearPromise<>();
+        taken.thenApply(value -> value);
+        LinearPromise<Integer> source = new LinearPromise<>();
+        LinearPromise<Integer> composed = source.thenCompose(value -> taken);
+        LinearPromise<Integer> nullStage = new LinearPromise<>();
+        LinearPromise<Integer> composedNull = nullStage.thenCompose(value -> null);
+
+        // the completing thread is not the one to fail
+        assertTrue(source.complete(1));
+        assertTrue(nullStage.complete(1));
+
+        assertInstanceOf(IllegalStateException.class, assertThrows(CompletionException.class, composed::join).getCause());
+        assertInstanceOf(NullPointerException.class, assertThrows(CompletionException.class, composedNull::join).getCause());
+    }
+
+    @Test
+    void exceptionallyComposeRecoversAFailureOnly() {
+        IllegalStateException failure = new IllegalStateException();
+        LinearPromise<Integer> failed = new LinearPromise<>();
+        LinearPromise<Integer> recovered = failed.exceptionallyCompose(exception -> {
+            assertSame(failure, exception);
+            return CompletableFuture.completedFuture(-1);
+        });
+        LinearPromise<Integer> succeeded = new LinearPromise<>();
+        LinearPromise<Integer> untouched = succeeded.exceptionallyCompose(exception -> LinearPromise.completed(-1));
+
+        failed.completeExceptionally(failure);
+        succeeded.complete(1);
+
+        assertEquals(-1, recovered.join());
+        assertEquals(1, untouched.join());
+    }
+
+    @Test
+    void runsTheAsyncStagesOnTheirExecutor() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "linear-async"));
+        try {
+            LinearPromise<Integer> source = new LinearPromise<>();
+            LinearPromise<String> last = source
+                    .thenComposeAsync(value -> LinearPromise.completed(value + 1), executor)
+                    .exceptionallyComposeAsync(exception -> LinearPromise.completed(-1), executor)
+                    .thenApplyAsync(value -> value + "@" + Thread.currentThread().getName(), executor);
+
+            source.complete(1);
+
+            assertEquals("2@linear-async", last.toCompletableFuture().get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void anAsyncStageRejectedByItsExecutorFails() {
+        RejectedExecutionException rejected = new RejectedExecutionException();
+        LinearPromise<Integer> source = new LinearPromise<>();
+        LinearPromise<Integer> composed = source.thenComposeAsync(value -> LinearPromise.completed(value), runnable -> {
+            throw rejected;
+        });
+
+        source.complete(1);
+
+        assertSame(rejected, assertThrows(CompletionException.class, composed::join).getCause());
+    }
+
+    @Test
+    void whenCompleteSeesTheResultAndKeepsTheFirstFailure() {
+        List<Object> seen = new ArrayList<>();
+        LinearPromise<Integer> source = new LinearPromise<>();
+        LinearPromise<Integer> same = source.whenComplete((value, exception) -> seen.add(value));
+
+        IllegalStateException failure = new IllegalStateException();
+        LinearPromise<Integer> failed = new LinearPromise<>();
+        LinearPromise<Integer> keepsFailure = failed.whenComplete((value, exception) -> {
+            seen.add(exception);
+            throw new IllegalArgumentException();
+        });
+
+        IllegalArgumentException actionFailure = new IllegalArgumentException();
+        LinearPromise<Integer> failsOnAction = LinearPromise.completed(2).whenComplete((value, exception) -> {
+            throw actionFailure;
+        });
+
+        source.complete(1);
+        failed.completeExceptionally(failure);
+
+        assertEquals(1, same.join());
+        assertSame(failure, assertThrows(CompletionException.class, keepsFailure::join).getCause());
+        assertSame(actionFailure, assertThrows(CompletionException.class, failsOnAction::join).getCause());
+        assertEquals(List.of(1, failure), seen);
+    }
+
+    private static void completeLater(LinearPromise<Integer> promise, int value) {
+        CompletableFuture.delayedExecutor(50, TimeUnit.MILLISECONDS).execute(() -> promise.complete(value));
+    }
+}
@@ -0,0 +1,56 @@
+package org.example.m4.resilience;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CircuitBreakerTest {
+
+    private final CircuitBreaker breaker = new CircuitBreaker("users", 4, 0.5, 1.0, 1_000, 50);
+
+    @Test
+    void opensWhenTheWindowFails() {
+        open();
+
+        CompletableFuture<String> rejected = breaker.call(() -> CompletableFuture.completedFuture("not sent"));
+
+        CompletionException thrown = assertThrows(CompletionException.class, rejected::join);
+        assertInstanceOf(CircuitBreakerOpenException.class, thrown.getCause());
+        assertEquals(CircuitBreaker.Kind.OPEN, breaker.state());
+    }
+
+    @Test
+    void givesUpAProbeThatNeverCompletes() throws InterruptedException {
+        open();
+        Thread.sleep(60);
+
+        // the dependency hangs: the probe never completes
+        CompletableFuture<String> hung = new CompletableFuture<>();
+        breaker.call(() -> hung);
+        assertEquals(CircuitBreaker.Kind.HALF_OPEN, breaker.state());
+        assertThrows(CompletionException.class, () -> breaker.call(() -> CompletableFuture.completedFuture("not sent")).join());
+
+        // after openMillis another probe is let through, and closes the breaker
+        Thread.sleep(60);
+        assertEquals("probe", breaker.call(() -> CompletableFuture.completedFuture("probe")).join());
+        assertEquals(CircuitBreaker.Kind.CLOSED, breaker.state());
+
+        // the outcome of the probe given up comes too late to change anything
+        hung.completeExceptionally(new IllegalStateException("timed out at last"));
+        assertEquals(CircuitBreaker.Kind.CLOSED, breaker.state());
+        assertFalse(breaker.call(() -> CompletableFuture.completedFuture("sent")).isCompletedExceptionally());
+    }
+
+    private void open() {
+        for (int i = 0; i < 4; i++) {
+            breaker.call(() -> CompletableFuture.failedFuture(new IllegalStateException("down")));
+        }
+        assertEquals(CircuitBreaker.Kind.OPEN, breaker.state());
+    }
+}
@@ -0,0 +1,55 @@
+package org.example.m4.resilience;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class DeadlineTest {
+
+    @Test
+    void boundsACopyAndLeavesASharedFutureAlone() throws Exception {
+        Deadline deadline = Deadline.after(Duration.ofMillis(50));
+        CompletableFuture<String> shared = new CompletableFuture<>();
+
+        CompletableFuture<String> bounded = deadline.compose((Integer value) -> shared, "fallback").apply(1);
+
+        assertEquals("fallback", bounded.get(5, TimeUnit.SECONDS));
+        // counted by the timer thread right after it completed the copy
+        long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (deadline.fallbackCount() == 0 && System.nanoTime() < until) {
+            Thread.onSpinWait();
+        }
+        assertEquals(1, deadline.fallbackCount());
+        // the other consumers of the shared future still get its own result
+        assertFalse(shared.isDone());
+        shared.complete("value");
+        assertEquals("value", shared.join());
+    }
+
+    @Test
+    void passesTheResultOnWithinTheBudget() throws Exception {
+        Deadline deadline = Deadline.after(Duration.ofSeconds(5));
+        CompletableFuture<String> future = new CompletableFuture<>();
+
+        CompletableFuture<String> bounded = deadline.bound(future, "fallback");
+        future.complete("value");
+
+        assertEquals("value", bounded.get(5, TimeUnit.SECONDS));
+        assertEquals(0, deadline.fallbackCount());
+    }
+
+    @Test
+    void skipsTheStagesOnceExpired() {
+        Deadline deadline = Deadline.after(Duration.ZERO);
+
+        assertEquals("fallback", deadline.compose((Integer value) -> CompletableFuture.completedFuture("value"), "fallback")
+                .apply(1).join());
+        assertEquals(-1, deadline.<Integer, Integer>apply(value -> value, -1).apply(1));
+        assertEquals(2, deadline.fallbackCount());
+    }
+}
@@ -0,0 +1,114 @@
+package org.example.m4.resilience;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HedgerTest {
+
+    @Test
+    void sendsTheBackupAfterTheDelayAndCancelsTheLoser() throws Exception {
+        Hedger hedger = new Hedger(95, 50, 50);
+        List<CompletableFuture<String>> attempts = new CopyOnWriteArrayList<>();
+        CountDownLatch backupSent = new CountDownLatch(2);
+
+        long start = System.nanoTime();
+        CompletableFuture<String> result = hedger.hedge(() -> {
+            CompletableFuture<String> attempt = new CompletableFuture<>();
+            attempts.add(attempt);
+            backupSent.countDown();
+            return attempt;
+        });
+        assertEquals(1, attempts.size());
+
+        assertTrue(backupSent.await(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        attempts.get(1).complete("backup");
+
+        assertEquals("backup", result.get(5, TimeUnit.SECONDS));
+        assertTrue(attempts.get(0).isCancelled());
+        assertEquals(1, hedger.hedgeCount());
+        assertEquals(1, hedger.backupWinCount());
+    }
+
+    @Test
+    void aPrimaryDoneBeforeTheDelayIsNotHedged() throws Exception {
+        Hedger hedger = new Hedger(95, 20, 20);
+        AtomicInteger attempts = new AtomicInteger();
+
+        CompletableFuture<Integer> result = hedger.hedge(() -> CompletableFuture.completedFuture(attempts.incrementAndGet()));
+
+        assertEquals(1, result.get(5, TimeUnit.SECONDS));
+        // well past the delay: the timer was cancelled with the request
+        Thread.sleep(60);
+        assertEquals(1, attempts.get());
+        assertEquals(0, hedger.hedgeCount());
+    }
+
+    @Test
+    void aFailedPrimarySendsTheBackupRightAway() throws Exception {
+        Hedger hedger = new Hedger(95, 60_000, 60_000);
+        AtomicInteger attempts = new AtomicInteger();
+
+        CompletableFuture<String> result = hedger.hedge(() -> attempts.incrementAndGet() == 1
+                ? CompletableFuture.failedFuture(new IllegalStateException("primary failed"))
+                : CompletableFuture.completedFuture("backup"));
+
+        assertEquals("backup", result.get(5, TimeUnit.SECONDS));
+        assertEquals(1, hedger.hedgeCount());
+    }
+
+    @Test
+    void theDelayFollowsThePercentileOfThePrimaries() {
+        Hedger hedger = new Hedger(95, 5, 1_000);
+
+        // not enough latencies yet: the maximum
+        for (int i = 0; i < 63; i++) {
+            hedger.hedge(() -> CompletableFuture.completedFuture(0)).join();
+        }
+        assertEquals(1_000, hedger.hedgeDelayMillis());
+
+        // the primaries answer at once: down to the minimum
+        hedger.hedge(() -> CompletableFuture.completedFuture(0)).join();
+        assertEquals(5, hedger.hedgeDelayMillis());
+        assertEquals(0, hedger.hedgeCount());
+    }
+
+    @Test
+    void interruptsTheThreadOfTheLosingTask() throws Exception {
+        Hedger hedger = new Hedger(95, 20, 20);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        AtomicInteger attempts = new AtomicInteger();
+        CountDownLatch interrupted = new CountDownLatch(1);
+        try {
+            CompletableFuture<String> result = hedger.hedge(() -> {
+                if (attempts.incrementAndGet() > 1) {
+                    return "backup";
+                }
+                try {
+                    Thread.sleep(60_000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return "primary";
+            }, executor);
+
+            assertEquals("backup", result.get(5, TimeUnit.SECONDS));
+            assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+            assertFalse(result.isCompletedExceptionally());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package org.example.m4.structured;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * the two implementations of FanOut, with the same inputs
+ */
+class FanOutTest {
+
+    private static final ExecutorService EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+    static Stream<FanOut> fanOuts() {
+        return Stream.of(new CompletableFutureFanOut(EXECUTOR), new StructuredFanOut());
+    }
+
+    @ParameterizedTest
+    @MethodSource("fanOuts")
+    void allCombinesBothBranches(FanOut fanOut) {
+        CompletableFuture<String> result = fanOut.all(() -> 3, n -> "users:" + n, n -> "emails:" + n,
+                (users, emails) -> users + "," + emails);
+
+        assertEquals("users:3,emails:3", result.join());
+    }
+
+    @ParameterizedTest
+    @MethodSource("fanOuts")
+    void allFailsWithTheFailingBranch(FanOut fanOut) {
+        IllegalStateException failure = new IllegalStateException("no emails");
+        CompletableFuture<String> result = fanOut.all(() -> 3, n -> sleepThen(5_000, "users"), n -> {
+            throw failure;
+        }, (users, emails) -> users + emails);
+
+        CompletionException thrown = assertThrows(CompletionException.class, result::join);
+        assertSame(failure, thrown.getCause());
+    }
+
+    @ParameterizedTest
+    @MethodSource("fanOuts")
+    void anyReturnsTheFirstSuccess(FanOut fanOut) {
+        List<Function<Integer, String>> alternatives = List.of(
+                n -> sleepThen(5_000, "slow"),
+                n -> {
+                    throw new IllegalStateException("down");
+                },
+                n -> "fast:" + n);
+
+        assertEquals("fast:3", fanOut.any(() -> 3, alternatives).join());
+    }
+
+    @ParameterizedTest
+    @MethodSource("fanOuts")
+    void anyFailsWhenEveryAlternativeFails(FanOut fanOut) {
+        List<Function<Integer, String>> alternatives = List.of(
+                n -> {
+                    throw new IllegalStateException("down");
+                },
+                n -> {
+                    throw new IllegalStateException("down too");
+                });
+
+        CompletionException thrown = assertThrows(CompletionException.class, () -> fanOut.any(() -> 3, alternatives).join());
+        assertInstanceOf(IllegalStateException.class, rootCause(thrown));
+    }
+
+    @ParameterizedTest
+    @MethodSource("fanOuts")
+    void anyRejectsNoAlternatives(FanOut fanOut) {
+        assertThrows(IllegalArgumentException.class, () -> fanOut.any(() -> 3, List.<Function<Integer, String>>of()));
+    }
+
+    private static String sleepThen(long millis, String value) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new CompletionException(e);
+        }
+        return value;
+    }
+
+    private static Throwable rootCause(Throwable throwable) {
+        while (throwable.getCause() != null) {
+            throwable = throwable.getCause();
+        }
+        return throwable;
+    }
+}
@@ -0,0 +1,106 @@
+package org.example.m4.timer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HashedWheelTimerTest {
+
+    // 1 ms ticks, 8 buckets: a round of the wheel is 8 ms
+    private final HashedWheelTimer timer = new HashedWheelTimer(1, TimeUnit.MILLISECONDS, 8, Runnable::run);
+
+    @AfterEach
+    void stop() {
+        timer.stop();
+    }
+
+    @Test
+    void expiresTheTimeoutsInTheOrderOfTheirDelays() throws Exception {
+        List<Integer> expired = Collections.synchronizedList(new ArrayList<>());
+        CompletableFuture<Void> last = new CompletableFuture<>();
+        timer.newTimeout(() -> {
+            expired.add(60);
+            last.complete(null);
+        }, 60, TimeUnit.MILLISECONDS);
+        timer.newTimeout(() -> expired.add(10), 10, TimeUnit.MILLISECONDS);
+        timer.newTimeout(() -> expired.add(30), 30, TimeUnit.MILLISECONDS);
+
+        last.get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of(10, 30, 60), expired);
+        assertEquals(0, timer.pendingTimeouts());
+    }
+
+    @Test
+    void aTimeoutOfSeveralRoundsDoesNotExpireOnAnEarlierRound() throws Exception {
+        long start = System.nanoTime();
+        CompletableFuture<Long> elapsed = new CompletableFuture<>();
+        timer.newTimeout(() -> elapsed.complete(System.nanoTime() - start), 50, TimeUnit.MILLISECONDS);
+
+        assertTrue(elapsed.get(5, TimeUnit.SECONDS) >= TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test
+    void aCancelledTimeoutDoesNotRun() throws Exception {
+        AtomicBoolean ran = new AtomicBoolean();
+        HashedWheelTimer.Timeout timeout = timer.newTimeout(() -> ran.set(true), 20, TimeUnit.MILLISECONDS);
+
+        assertTrue(timeout.cancel());
+        assertFalse(timeout.cancel());
+        assertTrue(timeout.isCancelled());
+        assertEquals(0, timer.pendingTimeouts());
+
+        // well past the deadline of the cancelled one
+        timer.delay(60).get(5, TimeUnit.SECONDS);
+
+        assertFalse(ran.get());
+        assertFalse(timeout.isExpired());
+    }
+
+    @Test
+    void cancellingADelayCancelsItsTimeout() {
+        CompletableFuture<Void> delay = timer.delay(1, TimeUnit.HOURS);
+        assertEquals(1, timer.pendingTimeouts());
+
+        delay.cancel(false);
+
+        assertEquals(0, timer.pendingTimeouts());
+    }
+
+    @Test
+    void stopCancelsTheOutstandingTimeouts() throws Exception {
+        AtomicBoolean ran = new AtomicBoolean();
+        HashedWheelTimer.Timeout task = timer.newTimeout(() -> ran.set(true), 1, TimeUnit.HOURS);
+        CompletableFuture<Void> delay = timer.delay(1, TimeUnit.HOURS);
+        CompletableFuture<String> bounded = timer.orTimeout(new CompletableFuture<>(), 1, TimeUnit.HOURS);
+        // one on the wheel already, the others maybe still queued
+        timer.delay(10).get(5, TimeUnit.SECONDS);
+        CompletableFuture<String> withFallback = timer.completeOnTimeout(new CompletableFuture<>(), "fallback", 1, TimeUnit.HOURS);
+
+        List<HashedWheelTimer.Timeout> cancelled = timer.stop();
+
+        assertEquals(4, cancelled.size());
+        assertTrue(cancelled.contains(task));
+        assertTrue(task.isCancelled());
+        assertFalse(ran.get());
+        assertTrue(delay.isCancelled());
+        // completed with a CancellationException: cancelled too, not left pending
+        assertThrows(CancellationException.class, () -> bounded.get(1, TimeUnit.SECONDS));
+        assertThrows(CancellationException.class, () -> withFallback.get(1, TimeUnit.SECONDS));
+        assertEquals(0, timer.pendingTimeouts());
+
+        assertThrows(IllegalStateException.class, () -> timer.delay(1));
+    }
+}
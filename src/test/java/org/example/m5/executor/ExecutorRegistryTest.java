@@ -0,0 +1,63 @@
+package org.example.m5.executor;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExecutorRegistryTest {
+
+    @Test
+    void shutsDownAndDrainsItsOwnPools() {
+        ExecutorRegistry registry = new ExecutorRegistry();
+        ExecutorService[] created = new ExecutorService[1];
+        registry.define("fetch", () -> created[0] = Executors.newFixedThreadPool(2));
+        try (ExecutorRegistry.Lease fetch = registry.lease("fetch")) {
+            assertEquals(42, CompletableFuture.supplyAsync(() -> 42, fetch).join());
+        }
+
+        assertTrue(registry.shutdown(Duration.ofSeconds(5)));
+        assertTrue(created[0].isTerminated());
+    }
+
+    @Test
+    void leavesTheCommonPoolAlone() {
+        ExecutorRegistry registry = new ExecutorRegistry();
+        registry.define(ExecutorRegistry.DEFAULT, ExecutorStrategy.COMMON_POOL, 1);
+        try (ExecutorRegistry.Lease lease = registry.lease(ExecutorRegistry.DEFAULT)) {
+            CompletableFuture.runAsync(() -> {
+            }, lease).join();
+        }
+
+        long start = System.nanoTime();
+        // awaitTermination() of the common pool never returns true: it would be reported as not drained
+        assertTrue(registry.shutdown(Duration.ofSeconds(2)));
+        assertTrue(System.nanoTime() - start < Duration.ofSeconds(1).toNanos());
+        assertFalse(ForkJoinPool.commonPool().isShutdown());
+    }
+
+    @Test
+    void leavesTheExecutorsItDoesNotOwnAlone() {
+        ExecutorService external = Executors.newSingleThreadExecutor();
+        try {
+            ExecutorRegistry registry = new ExecutorRegistry();
+            registry.register("external", external);
+            try (ExecutorRegistry.Lease lease = registry.lease("external")) {
+                CompletableFuture.runAsync(() -> {
+                }, lease).join();
+            }
+
+            assertTrue(registry.shutdown(Duration.ofSeconds(2)));
+            assertFalse(external.isShutdown());
+        } finally {
+            external.shutdown();
+        }
+    }
+}